@@ -0,0 +1,58 @@
+package com.emasmetal.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+    
+    @Value("${image.worker-threads:2}")
+    private int imageWorkerThreads;
+    
+    @Value("${image.queue-capacity:200}")
+    private int imageQueueCapacity;
+    
+    @Value("${file.storage.io-threads:8}")
+    private int storageIoThreads;
+    
+    // Declaring any executor bean switches off Spring Boot's default one,
+    // so the executor used by plain @Async methods is registered explicitly.
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+    
+    @Bean
+    public ThreadPoolTaskExecutor imageTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageWorkerThreads);
+        executor.setMaxPoolSize(imageWorkerThreads);
+        executor.setQueueCapacity(imageQueueCapacity);
+        executor.setThreadNamePrefix("image-");
+        // A full queue rejects the task; ThumbnailService leaves the item to its periodic backfill
+        return executor;
+    }
+    
+    // FileDeletionService's worker; it waits on storage futures, so it must not run on storageTaskExecutor
+    @Bean
+    public ThreadPoolTaskExecutor fileDeletionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("file-deletion-");
+        return executor;
+    }
+    
+    // Blocking file I/O behind the asynchronous StorageBackend operations
+    @Bean
+    public ThreadPoolTaskExecutor storageTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(storageIoThreads);
+        executor.setMaxPoolSize(storageIoThreads);
+        executor.setThreadNamePrefix("storage-");
+        return executor;
+    }
+}
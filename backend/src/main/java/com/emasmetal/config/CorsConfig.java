@@ -15,6 +15,11 @@ import java.util.List;
 @Configuration
 public class CorsConfig implements WebMvcConfigurer {
     
+    // Read by browser clients of /api/uploads
+    private static final String[] RESUMABLE_UPLOAD_HEADERS = {
+            "Location", "Tus-Resumable", "Upload-Offset", "Upload-Length", "Upload-Expires"
+    };
+    
     @Value("${cors.allowed-origins}")
     private String allowedOrigins;
     
@@ -24,8 +29,9 @@ public class CorsConfig implements WebMvcConfigurer {
         
         registry.addMapping("/api/**")
                 .allowedOrigins(origins)
-                .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
+                .allowedMethods("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(RESUMABLE_UPLOAD_HEADERS)
                 .allowCredentials(true)
                 .maxAge(3600);
         
@@ -33,14 +39,20 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins(origins)
                 .allowedMethods("GET")
                 .maxAge(3600);
+        
+        registry.addMapping("/img/**")
+                .allowedOrigins(origins)
+                .allowedMethods("GET")
+                .maxAge(3600);
     }
     
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Arrays.asList(allowedOrigins.split(",")));
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of(RESUMABLE_UPLOAD_HEADERS));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
@@ -1,6 +1,7 @@
 package com.emasmetal.config;
 
 import com.emasmetal.security.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -33,15 +34,20 @@ public class SecurityConfig {
                 .sessionManagement(session ->
                         session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // Completion of an already authorized async request, e.g. an event stream
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // Public endpoints
                         .requestMatchers(HttpMethod.GET, "/api/references/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/gallery/**").permitAll()
                         .requestMatchers(HttpMethod.POST, "/api/contact").permitAll()
+                        .requestMatchers("/api/uploads", "/api/uploads/**").permitAll()
 
                         // Authentication endpoints
                         .requestMatchers("/api/auth/**").permitAll()                        
                         // Static files and uploads
                         .requestMatchers("/uploads/**").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/img/**").permitAll()
 
                         // Swagger/OpenAPI
                         .requestMatchers(
@@ -53,6 +59,7 @@ public class SecurityConfig {
 
                         // Health check
                         .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
 
                         // Admin endpoints require authentication
                         .requestMatchers(HttpMethod.POST, "/api/references/**").hasRole("ADMIN")
@@ -62,6 +69,7 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.PUT, "/api/gallery/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/api/gallery/**").hasRole("ADMIN")
                         .requestMatchers("/api/contact/messages/**").hasRole("ADMIN")
+                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
 
                         // Everything else requires authentication
                         .anyRequest().authenticated()
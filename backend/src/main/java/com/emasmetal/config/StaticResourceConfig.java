@@ -1,26 +0,0 @@
-package com.emasmetal.config;
-
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
-@Configuration
-public class StaticResourceConfig implements WebMvcConfigurer {
-    
-    @Value("${file.upload-dir}")
-    private String uploadDir;
-    
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
-        String uploadLocation = "file:" + uploadPath.toString() + "/";
-        
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations(uploadLocation)
-                .setCachePeriod(3600);
-    }
-}
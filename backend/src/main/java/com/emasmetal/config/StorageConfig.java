@@ -0,0 +1,142 @@
+package com.emasmetal.config;
+
+import com.emasmetal.service.DiskLruCache;
+import com.emasmetal.storage.CachingStorageBackend;
+import com.emasmetal.storage.FileSystemStorageBackend;
+import com.emasmetal.storage.MultiVolumeStorageBackend;
+import com.emasmetal.storage.S3StorageBackend;
+import com.emasmetal.storage.StorageBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+@Slf4j
+public class StorageConfig {
+    
+    @Value("${file.storage.backend:filesystem}")
+    private String backend;
+    
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+    
+    @Value("${file.storage.list-threads:4}")
+    private int listThreads;
+    
+    @Value("${file.storage.volumes:}")
+    private String volumesStr;
+    
+    @Value("${file.storage.min-free-bytes:1073741824}")
+    private long minFreeBytes;
+    
+    @Value("${file.storage.min-free-percent:5}")
+    private double minFreePercent;
+    
+    @Value("${file.storage.s3.endpoint:}")
+    private String s3Endpoint;
+    
+    @Value("${file.storage.s3.region:us-east-1}")
+    private String s3Region;
+    
+    @Value("${file.storage.s3.bucket:emas-uploads}")
+    private String s3Bucket;
+    
+    @Value("${file.storage.s3.access-key:}")
+    private String s3AccessKey;
+    
+    @Value("${file.storage.s3.secret-key:}")
+    private String s3SecretKey;
+    
+    @Value("${file.storage.s3.path-style:true}")
+    private boolean s3PathStyle;
+    
+    @Value("${file.storage.cache.enabled:true}")
+    private boolean cacheEnabled;
+    
+    @Value("${file.storage.cache.dir:./cache/uploads}")
+    private String cacheDir;
+    
+    @Value("${file.storage.cache.max-bytes:1073741824}")
+    private long cacheMaxBytes;
+    
+    @Bean
+    public StorageBackend storageBackend(@Qualifier("storageTaskExecutor") TaskExecutor storageTaskExecutor,
+                                         MeterRegistry meterRegistry) throws IOException {
+        switch (backend.trim().toLowerCase()) {
+            case "filesystem" -> {
+                if (volumesStr.isBlank()) {
+                    log.info("Storing uploads on the local file system at {}", uploadDir);
+                    return new FileSystemStorageBackend(Paths.get(uploadDir), storageTaskExecutor, listThreads);
+                }
+                Map<String, Path> volumes = parseVolumes();
+                log.info("Storing uploads on the local file system at {} and volumes {}", uploadDir, volumes);
+                return new MultiVolumeStorageBackend(Paths.get(uploadDir).toAbsolutePath().normalize(), volumes,
+                        storageTaskExecutor, listThreads, minFreeBytes, minFreePercent / 100);
+            }
+            case "s3" -> {
+                log.info("Storing uploads in bucket {} at {}", s3Bucket, s3Endpoint.isBlank() ? "AWS" : s3Endpoint);
+                S3StorageBackend remote = new S3StorageBackend(s3Client(), s3Bucket);
+                remote.ensureBucket();
+                if (!cacheEnabled) {
+                    return remote;
+                }
+                DiskLruCache cache = new DiskLruCache(Paths.get(cacheDir), cacheMaxBytes);
+                cache.init();
+                cache.monitor(meterRegistry, "storage");
+                return new CachingStorageBackend(remote, cache, storageTaskExecutor);
+            }
+            default -> throw new IllegalStateException("Unknown file.storage.backend: " + backend);
+        }
+    }
+    
+    // "v2=/mnt/disk2,v3=/mnt/disk3"
+    private Map<String, Path> parseVolumes() throws IOException {
+        Map<String, Path> volumes = new LinkedHashMap<>();
+        for (String entry : volumesStr.split(",")) {
+            String[] parts = entry.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalStateException("Expected <id>=<directory> in file.storage.volumes: " + entry);
+            }
+            Path root = Paths.get(parts[1].trim()).toAbsolutePath().normalize();
+            Files.createDirectories(root);
+            volumes.put(parts[0].trim(), root);
+        }
+        return volumes;
+    }
+    
+    private S3AsyncClient s3Client() {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                .region(Region.of(s3Region))
+                // MinIO and most other S3-compatible stores do not serve virtual-hosted buckets
+                .forcePathStyle(s3PathStyle);
+        
+        if (!s3Endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(s3Endpoint));
+        }
+        if (!s3AccessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(s3AccessKey, s3SecretKey)));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        return builder.build();
+    }
+}
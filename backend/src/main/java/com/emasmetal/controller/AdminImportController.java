@@ -0,0 +1,80 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.dto.ImportDto;
+import com.emasmetal.service.ImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/import")
+@RequiredArgsConstructor
+@Tag(name = "Import", description = "Bulk import of gallery items and references (admin only)")
+public class AdminImportController {
+    
+    private final ImportService importService;
+    
+    @PostMapping(value = "/gallery", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Import gallery items in bulk",
+            description = "Parts, in this order: 'manifest' (CSV with a header row, or a JSON array; columns title, "
+                    + "category, description, displayOrder and file) and 'archive' (ZIP holding the files). "
+                    + "Items are created in the background; poll the returned import for progress (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Archive received, import running"),
+            @ApiResponse(responseCode = "400", description = "Missing or invalid manifest, or unreadable archive"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "409", description = "An import is already running"),
+            @ApiResponse(responseCode = "413", description = "Request too large")
+    })
+    public ResponseEntity<ImportDto.Progress> importGallery(HttpServletRequest request) {
+        return ResponseEntity.accepted().body(importService.importGallery(request));
+    }
+    
+    @PostMapping(value = "/references", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Import references in bulk",
+            description = "Parts, in this order: 'manifest' (CSV with a header row, or a JSON array; columns name, "
+                    + "websiteUrl, industry, description, displayOrder and optionally file) and 'archive' (ZIP "
+                    + "holding the logos). References are created in the background; poll the returned import "
+                    + "for progress (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Archive received, import running"),
+            @ApiResponse(responseCode = "400", description = "Missing or invalid manifest, or unreadable archive"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "409", description = "An import is already running"),
+            @ApiResponse(responseCode = "413", description = "Request too large")
+    })
+    public ResponseEntity<ImportDto.Progress> importReferences(HttpServletRequest request) {
+        return ResponseEntity.accepted().body(importService.importReferences(request));
+    }
+    
+    @GetMapping("/{id}")
+    @Operation(
+            summary = "Get import progress",
+            description = "Rows created and failed so far, with the reasons for the first failures (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import progress"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "No such import, or it finished too long ago")
+    })
+    public ResponseEntity<ImportDto.Progress> getProgress(
+            @PathVariable UUID id) {
+        return ResponseEntity.ok(importService.getProgress(id));
+    }
+}
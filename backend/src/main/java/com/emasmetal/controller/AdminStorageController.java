@@ -0,0 +1,58 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.dto.StorageDto;
+import com.emasmetal.service.StorageReconciliationService;
+import com.emasmetal.service.UploadLayoutMigrationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin/storage")
+@RequiredArgsConstructor
+@Tag(name = "Storage", description = "Upload storage maintenance (admin only)")
+public class AdminStorageController {
+    
+    private final StorageReconciliationService storageReconciliationService;
+    private final UploadLayoutMigrationService uploadLayoutMigrationService;
+    
+    @PostMapping("/reconcile")
+    @Operation(
+            summary = "Reconcile uploads with the database",
+            description = "Quarantine or delete unreferenced upload files older than the grace period and report "
+                    + "database rows pointing at missing files (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reconciliation report"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "409", description = "A reconciliation is already running")
+    })
+    public ResponseEntity<StorageDto.ReconcileReport> reconcile(
+            @Parameter(description = "Only report, remove nothing")
+            @RequestParam(required = false, defaultValue = "false") boolean dryRun) {
+        return ResponseEntity.ok(storageReconciliationService.reconcile(dryRun));
+    }
+    
+    @PostMapping("/migrate-layout")
+    @Operation(
+            summary = "Move uploads to the sharded directory layout",
+            description = "Move files stored flat under their category into hash-sharded subdirectories and "
+                    + "rewrite the stored URLs. Safe to run again; old URLs keep working meanwhile (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Migration report"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "409", description = "A migration is already running")
+    })
+    public ResponseEntity<StorageDto.LayoutMigrationReport> migrateLayout() {
+        return ResponseEntity.ok(uploadLayoutMigrationService.migrate());
+    }
+}
@@ -1,22 +1,24 @@
 package com.emasmetal.controller;
 
 import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.dto.PageDto;
 import com.emasmetal.service.ContactService;
+import com.emasmetal.service.StreamingUploadService;
+import com.emasmetal.service.UnreadCountService;
 import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -27,22 +29,43 @@ import java.util.UUID;
 public class ContactController {
     
     private final ContactService contactService;
+    private final StreamingUploadService streamingUploadService;
+    private final UnreadCountService unreadCountService;
     
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Submit a contact message", 
-            description = "Submit a new contact inquiry with optional file attachment"
+            description = "Submit a new contact inquiry with optional file attachment. Parts: 'data' (JSON) and "
+                    + "optional 'attachment' (technical drawing: PDF, DWG, DXF, STEP, PNG, JPG)"
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Message submitted successfully"),
             @ApiResponse(responseCode = "400", description = "Invalid input or file type")
     })
-    public ResponseEntity<ContactMessageDto.PublicResponse> submitContactMessage(
-            @Valid @RequestPart("data") ContactMessageDto.CreateRequest request,
-            @Parameter(description = "Technical drawing attachment (PDF, DWG, DXF, STEP, PNG, JPG)")
-            @RequestPart(value = "attachment", required = false) MultipartFile attachment) {
+    public ResponseEntity<ContactMessageDto.PublicResponse> submitContactMessage(HttpServletRequest request) {
+        try (StreamingUploadService.ParsedUpload<ContactMessageDto.CreateRequest> upload = streamingUploadService.parse(
+                request, ContactMessageDto.CreateRequest.class, "attachment", "attachments")) {
+            
+            ContactMessageDto.PublicResponse response = contactService.submitContactMessage(upload.data(), upload.file());
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        }
+    }
+    
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Submit a contact message without a file part",
+            description = "Submit a contact inquiry as JSON. A large attachment can be sent beforehand through "
+                    + "/api/uploads and referenced by its uploadId"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Message submitted successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "409", description = "Upload not complete or already used")
+    })
+    public ResponseEntity<ContactMessageDto.PublicResponse> submitContactMessageJson(
+            @Valid @RequestBody ContactMessageDto.CreateRequest request) {
         
-        ContactMessageDto.PublicResponse response = contactService.submitContactMessage(request, attachment);
+        ContactMessageDto.PublicResponse response = contactService.submitContactMessage(request, null);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
     
@@ -50,24 +73,22 @@ public class ContactController {
     
     @GetMapping("/messages")
     @Operation(
-            summary = "Get all contact messages", 
-            description = "Retrieve all contact messages (admin only)",
+            summary = "Get contact messages", 
+            description = "Retrieve contact messages page by page, newest first (admin only), as summaries "
+                    + "without the message body or attachment. Pass the returned nextCursor as 'cursor' for the "
+                    + "following page",
             security = @SecurityRequirement(name = "basicAuth")
     )
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "List of messages"),
+            @ApiResponse(responseCode = "200", description = "Page of messages"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or page size"),
             @ApiResponse(responseCode = "401", description = "Unauthorized")
     })
-    public ResponseEntity<List<ContactMessageDto.Response>> getAllMessages(
-            @RequestParam(required = false, defaultValue = "false") boolean unreadOnly) {
-        
-        List<ContactMessageDto.Response> messages;
-        if (unreadOnly) {
-            messages = contactService.getUnreadMessages();
-        } else {
-            messages = contactService.getAllMessages();
-        }
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<PageDto.CursorPage<ContactMessageDto.Summary>> getAllMessages(
+            @RequestParam(required = false, defaultValue = "false") boolean unreadOnly,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(contactService.getMessages(cursor, size, unreadOnly));
     }
     
     @GetMapping("/messages/{id}")
@@ -117,6 +138,40 @@ public class ContactController {
         return ResponseEntity.noContent().build();
     }
     
+    @PostMapping("/messages/bulk-read")
+    @Operation(
+            summary = "Mark messages as read in bulk",
+            description = "Mark the listed messages, those created before 'olderThan', or the listed ones among "
+                    + "those as read (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of messages marked as read"),
+            @ApiResponse(responseCode = "400", description = "Neither ids nor olderThan given, or too many ids"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<ContactMessageDto.BulkResponse> bulkMarkAsRead(
+            @Valid @RequestBody ContactMessageDto.BulkRequest request) {
+        return ResponseEntity.ok(contactService.bulkMarkAsRead(request));
+    }
+    
+    @PostMapping("/messages/bulk-delete")
+    @Operation(
+            summary = "Delete messages in bulk",
+            description = "Delete the listed messages, those created before 'olderThan', or the listed ones among "
+                    + "those, along with their attachments (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of messages deleted"),
+            @ApiResponse(responseCode = "400", description = "Neither ids nor olderThan given, or too many ids"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<ContactMessageDto.BulkResponse> bulkDelete(
+            @Valid @RequestBody ContactMessageDto.BulkRequest request) {
+        return ResponseEntity.ok(contactService.bulkDelete(request));
+    }
+    
     @GetMapping("/messages/unread-count")
     @Operation(
             summary = "Get unread message count", 
@@ -124,6 +179,17 @@ public class ContactController {
             security = @SecurityRequirement(name = "basicAuth")
     )
     public ResponseEntity<Map<String, Long>> getUnreadCount() {
-        return ResponseEntity.ok(Map.of("unreadCount", contactService.getUnreadCount()));
+        return ResponseEntity.ok(Map.of("unreadCount", unreadCountService.getUnreadCount()));
+    }
+    
+    @GetMapping(value = "/messages/unread-count/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Stream the unread message count",
+            description = "Server-Sent Events: an 'unread-count' event with {\"unreadCount\": n} on connect, on every "
+                    + "change and periodically as a keep-alive (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    public SseEmitter streamUnreadCount() {
+        return unreadCountService.subscribe();
     }
 }
@@ -0,0 +1,81 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.service.JsonSnapshot;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Picks the representation of a response from the request's {@code Accept-Encoding} and
+ * conditional headers.
+ */
+final class ContentNegotiation {
+
+    private static final String GZIP = "gzip";
+
+    private ContentNegotiation() {
+    }
+
+    /**
+     * Whether {@code Accept-Encoding} allows the coding, by name or through {@code *}, with a
+     * non-zero quality.
+     */
+    static boolean acceptsEncoding(HttpServletRequest request, String coding) {
+        String header = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (header == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String entry : header.split(",")) {
+            String[] parts = entry.split(";");
+            String name = parts[0].trim();
+            boolean allowed = parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            if (name.equalsIgnoreCase(coding)) {
+                return allowed;
+            }
+            if (name.equals("*")) {
+                wildcard = allowed;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Sends a pre-serialized JSON body as it is, gzipped when the client accepts that, or
+     * {@code 304} when the client's copy is current. Clients revalidate on every use.
+     */
+    static ResponseEntity<byte[]> json(HttpServletRequest request, JsonSnapshot snapshot) {
+        boolean gzip = acceptsEncoding(request, GZIP);
+        String etag = "\"" + snapshot.etag() + (gzip ? "-" + GZIP : "") + "\"";
+
+        boolean notModified = matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (notModified) {
+            return response.build();
+        }
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return response.contentType(MediaType.APPLICATION_JSON).body(gzip ? snapshot.gzippedBody() : snapshot.body());
+    }
+
+    // Weak comparison, as required for If-None-Match
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
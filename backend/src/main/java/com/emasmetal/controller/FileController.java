@@ -0,0 +1,292 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.service.FileStorageService;
+import com.emasmetal.storage.ContentCoding;
+import com.emasmetal.storage.StoredObject;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves uploaded files with strong validators and single byte-range support. When the storage
+ * backend keeps a copy on this machine the body is handed to Tomcat's sendfile, or copied with
+ * {@link FileChannel#transferTo}, so file contents never pass through a heap buffer; otherwise
+ * the requested range is streamed from the backend.
+ *
+ * <p>Files stored compressed are sent as they are, with {@code Content-Encoding}, to clients that
+ * accept the coding, and decompressed on the fly, without ranges, for the others.
+ */
+@RestController
+@RequestMapping("/uploads")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Files", description = "Uploaded files")
+public class FileController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Content-addressed uploads are named after the SHA-256 of their bytes
+    private static final Pattern DIGEST_NAME = Pattern.compile("^([0-9a-f]{64})\\.[a-z0-9]+$");
+    private static final Pattern BYTE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+    private final FileStorageService fileStorageService;
+
+    @Value("${file.cache.immutable-max-age:P365D}")
+    private Duration immutableMaxAge;
+
+    @Value("${file.cache.mutable-max-age:PT1H}")
+    private Duration mutableMaxAge;
+
+    @GetMapping("/**")
+    @Operation(
+            summary = "Download an uploaded file",
+            description = "Supports a single byte range (Range/If-Range) and conditional requests "
+                    + "(If-None-Match/If-Modified-Since). Files stored compressed are sent with "
+                    + "Content-Encoding when Accept-Encoding allows it"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Whole file"),
+            @ApiResponse(responseCode = "206", description = "Requested byte range"),
+            @ApiResponse(responseCode = "304", description = "Cached copy is still current"),
+            @ApiResponse(responseCode = "404", description = "File not found"),
+            @ApiResponse(responseCode = "416", description = "Range outside the file")
+    })
+    public void getFile(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String relativePath = request.getRequestURI().substring(request.getContextPath().length() + "/uploads/".length());
+        StoredObject file = fileStorageService.statPublicFile(relativePath);
+
+        long size = file.size();
+        long lastModified = file.lastModified().toEpochMilli();
+        Optional<ContentCoding> coding = ContentCoding.ofKey(file.key());
+        boolean decode = coding.isPresent() && !ContentNegotiation.acceptsEncoding(request, coding.get().token());
+        String etag = etagFor(file, decode ? Optional.empty() : coding);
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControlFor(relativePath).getHeaderValue());
+        if (coding.isPresent()) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(relativePath)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        if (decode) {
+            // The decompressed length is not known up front; the body goes out chunked
+            if (!"HEAD".equals(request.getMethod())) {
+                try (InputStream in = fileStorageService.openContent(file.key())) {
+                    in.transferTo(response.getOutputStream());
+                } catch (IOException e) {
+                    log.debug("Stopped sending {}: {}", relativePath, e.getMessage());
+                }
+            }
+            return;
+        }
+        coding.ifPresent(value -> response.setHeader(HttpHeaders.CONTENT_ENCODING, value.token()));
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = size;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+            }
+        }
+
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || end == start) {
+            return;
+        }
+
+        Optional<Path> localFile = fileStorageService.localFile(file.key());
+        if (localFile.isEmpty()) {
+            try (InputStream in = fileStorageService.open(file.key(), start, end - start)) {
+                in.transferTo(response.getOutputStream());
+            } catch (IOException e) {
+                log.debug("Stopped sending {}: {}", relativePath, e.getMessage());
+            }
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file itself once the servlet returns
+            request.setAttribute(SENDFILE_FILENAME, localFile.get().toRealPath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(localFile.get(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        } catch (IOException e) {
+            // Almost always the client closing the connection mid-download
+            log.debug("Stopped sending {}: {}", relativePath, e.getMessage());
+        }
+    }
+
+    private CacheControl cacheControlFor(String relativePath) {
+        if (FileStorageService.isFingerprinted(relativePath)) {
+            return CacheControl.maxAge(immutableMaxAge).cachePublic().immutable();
+        }
+        return CacheControl.maxAge(mutableMaxAge).cachePublic();
+    }
+
+    /**
+     * Content-addressed files use their digest; anything else is identified by the backend's
+     * version (inode or object ETag), size and modification time, which change whenever the bytes do.
+     * The compressed representation of a file gets a tag of its own.
+     */
+    private static String etagFor(StoredObject file, Optional<ContentCoding> coding) {
+        String suffix = coding.map(value -> "-" + value.token()).orElse("");
+        String plainKey = ContentCoding.plainKey(file.key());
+        Matcher digestName = DIGEST_NAME.matcher(plainKey.substring(plainKey.lastIndexOf('/') + 1));
+        if (digestName.matches()) {
+            return "\"" + digestName.group(1) + suffix + "\"";
+        }
+
+        String identity = file.version() + "|" + file.size() + "|" + file.lastModified().toEpochMilli();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + suffix + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // Weak comparison, as required for If-None-Match
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || stripWeak(tag).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Strong comparison: a weak tag never matches
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date / 1000 == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single {@code bytes=} range into {@code [start, endExclusive]}. Returns an empty array
+     * when the header should be ignored (malformed or multiple ranges) and {@code null} when the
+     * range cannot be satisfied.
+     */
+    private static long[] parseRange(String header, long size) {
+        Matcher matcher = BYTE_RANGE.matcher(header.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            return new long[0];
+        }
+
+        try {
+            if (matcher.group(1).isEmpty()) {
+                long suffix = Long.parseLong(matcher.group(2));
+                if (suffix == 0 || size == 0) {
+                    return null;
+                }
+                return new long[]{Math.max(0, size - suffix), size};
+            }
+
+            long start = Long.parseLong(matcher.group(1));
+            long last = matcher.group(2).isEmpty() ? Long.MAX_VALUE : Long.parseLong(matcher.group(2));
+            if (last < start) {
+                return new long[0];
+            }
+            if (start >= size) {
+                return null;
+            }
+            return new long[]{start, Math.min(last, size - 1) + 1};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -1,22 +1,26 @@
 package com.emasmetal.controller;
 
 import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.dto.PageDto;
+import com.emasmetal.dto.SyncDto;
 import com.emasmetal.service.GalleryService;
+import com.emasmetal.service.JsonSnapshot;
+import com.emasmetal.service.StreamingUploadService;
 import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -26,20 +30,59 @@ import java.util.UUID;
 public class GalleryController {
     
     private final GalleryService galleryService;
+    private final StreamingUploadService streamingUploadService;
     
     @GetMapping
-    @Operation(summary = "Get all gallery items", description = "Retrieve all gallery images")
-    @ApiResponse(responseCode = "200", description = "List of gallery items")
-    public ResponseEntity<List<GalleryItemDto.Response>> getAllGalleryItems(
-            @RequestParam(required = false) String category) {
+    @Operation(
+            summary = "Get all gallery items",
+            description = "Retrieve all gallery images. Served from a cached, pre-serialized body with an ETag"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "List of gallery items",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            array = @ArraySchema(schema = @Schema(implementation = GalleryItemDto.ListItem.class)))),
+            @ApiResponse(responseCode = "304", description = "Cached copy is still current")
+    })
+    public ResponseEntity<byte[]> getAllGalleryItems(
+            @RequestParam(required = false) String category, HttpServletRequest request) {
         
-        List<GalleryItemDto.Response> items;
-        if (category != null && !category.isBlank()) {
-            items = galleryService.getGalleryItemsByCategory(category);
-        } else {
-            items = galleryService.getAllGalleryItems();
-        }
-        return ResponseEntity.ok(items);
+        JsonSnapshot snapshot = category != null && !category.isBlank()
+                ? galleryService.getGalleryItemsByCategoryJson(category)
+                : galleryService.getAllGalleryItemsJson();
+        return ContentNegotiation.json(request, snapshot);
+    }
+    
+    @GetMapping("/page")
+    @Operation(
+            summary = "Get gallery items page by page",
+            description = "Gallery items in listing order, optionally of one category. Pass the returned "
+                    + "nextCursor as 'cursor' for the following page"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of gallery items"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or page size")
+    })
+    public ResponseEntity<PageDto.CursorPage<GalleryItemDto.ListItem>> getGalleryPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String category) {
+        return ResponseEntity.ok(galleryService.getGalleryPage(cursor, size, category));
+    }
+    
+    @GetMapping("/changes")
+    @Operation(
+            summary = "Get changes since a sync token",
+            description = "Created or changed gallery items in full and the ids of deleted ones since 'since', plus the "
+                    + "token for the next call. Omit 'since' for everything; 'reset' means the token was not "
+                    + "recognised and the local copy should be replaced"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Changes since the token"),
+            @ApiResponse(responseCode = "400", description = "Malformed token")
+    })
+    public ResponseEntity<SyncDto.Changes<GalleryItemDto.Response>> getChanges(
+            @RequestParam(required = false) String since) {
+        return ResponseEntity.ok(galleryService.getChangesSince(since));
     }
     
     @GetMapping("/{id}")
@@ -56,7 +99,7 @@ public class GalleryController {
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Upload a new gallery item", 
-            description = "Upload a new gallery image (admin only)",
+            description = "Upload a new gallery image (admin only). Parts: 'data' (JSON) and 'image' (required)",
             security = @SecurityRequirement(name = "basicAuth")
     )
     @ApiResponses(value = {
@@ -64,19 +107,19 @@ public class GalleryController {
             @ApiResponse(responseCode = "400", description = "Invalid input or missing image"),
             @ApiResponse(responseCode = "401", description = "Unauthorized")
     })
-    public ResponseEntity<GalleryItemDto.Response> createGalleryItem(
-            @Valid @RequestPart("data") GalleryItemDto.CreateRequest request,
-            @Parameter(description = "Gallery image (required)")
-            @RequestPart("image") MultipartFile image) {
-        
-        GalleryItemDto.Response created = galleryService.createGalleryItem(request, image);
-        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    public ResponseEntity<GalleryItemDto.Response> createGalleryItem(HttpServletRequest request) {
+        try (StreamingUploadService.ParsedUpload<GalleryItemDto.CreateRequest> upload = streamingUploadService.parse(
+                request, GalleryItemDto.CreateRequest.class, "image", "gallery")) {
+            
+            GalleryItemDto.Response created = galleryService.createGalleryItem(upload.data(), upload.file());
+            return ResponseEntity.status(HttpStatus.CREATED).body(created);
+        }
     }
     
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Update a gallery item", 
-            description = "Update an existing gallery item (admin only)",
+            description = "Update an existing gallery item (admin only). Parts: 'data' (JSON) and optional 'image'",
             security = @SecurityRequirement(name = "basicAuth")
     )
     @ApiResponses(value = {
@@ -87,11 +130,13 @@ public class GalleryController {
     })
     public ResponseEntity<GalleryItemDto.Response> updateGalleryItem(
             @PathVariable UUID id,
-            @Valid @RequestPart("data") GalleryItemDto.UpdateRequest request,
-            @Parameter(description = "New gallery image")
-            @RequestPart(value = "image", required = false) MultipartFile image) {
+            HttpServletRequest request) {
         
-        return ResponseEntity.ok(galleryService.updateGalleryItem(id, request, image));
+        try (StreamingUploadService.ParsedUpload<GalleryItemDto.UpdateRequest> upload = streamingUploadService.parse(
+                request, GalleryItemDto.UpdateRequest.class, "image", "gallery")) {
+            
+            return ResponseEntity.ok(galleryService.updateGalleryItem(id, upload.data(), upload.file()));
+        }
     }
     
     @DeleteMapping("/{id}")
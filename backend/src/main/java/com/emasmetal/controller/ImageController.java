@@ -0,0 +1,68 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.service.FileStorageService;
+import com.emasmetal.service.ImageResizeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/img")
+@RequiredArgsConstructor
+@Tag(name = "Images", description = "On-demand resized versions of uploaded images")
+public class ImageController {
+    
+    private final ImageResizeService imageResizeService;
+    
+    @Value("${file.cache.immutable-max-age:P365D}")
+    private Duration immutableMaxAge;
+    
+    @GetMapping("/**")
+    @Operation(
+            summary = "Get a resized image",
+            description = "Resize a gallery or logo upload, e.g. /img/gallery/<file>.jpg?w=640. "
+                    + "Sizes and qualities are limited to a fixed whitelist."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Resized image"),
+            @ApiResponse(responseCode = "400", description = "Size, fit or quality not allowed"),
+            @ApiResponse(responseCode = "404", description = "Image not found")
+    })
+    public ResponseEntity<Resource> getResizedImage(
+            HttpServletRequest request,
+            @Parameter(description = "Target width in px") @RequestParam(required = false) Integer w,
+            @Parameter(description = "Target height in px") @RequestParam(required = false) Integer h,
+            @Parameter(description = "contain or cover") @RequestParam(required = false, defaultValue = "contain") String fit,
+            @Parameter(description = "JPEG quality") @RequestParam(required = false) Integer q) {
+        
+        String relativePath = request.getRequestURI().substring(request.getContextPath().length() + "/img/".length());
+        ImageResizeService.ResizedImage image = imageResizeService.getResized(relativePath, w, h, fit, q);
+        
+        // A fingerprinted source never changes, and neither does a rendering of it with the same parameters
+        CacheControl cacheControl = FileStorageService.isFingerprinted(relativePath)
+                ? CacheControl.maxAge(immutableMaxAge).cachePublic().immutable()
+                : CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+        
+        return ResponseEntity.ok()
+                .contentType(image.contentType())
+                .contentLength(image.size())
+                .cacheControl(cacheControl)
+                .body(new InputStreamResource(image.content()));
+    }
+}
@@ -1,24 +1,25 @@
 package com.emasmetal.controller;
 
 import com.emasmetal.dto.ReferenceDto;
+import com.emasmetal.dto.SyncDto;
+import com.emasmetal.service.JsonSnapshot;
 import com.emasmetal.service.ReferenceService;
+import com.emasmetal.service.StreamingUploadService;
 import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -28,20 +29,42 @@ import java.util.UUID;
 public class ReferenceController {
     
     private final ReferenceService referenceService;
+    private final StreamingUploadService streamingUploadService;
     
     @GetMapping
-    @Operation(summary = "Get all references", description = "Retrieve all client references")
-    @ApiResponse(responseCode = "200", description = "List of references")
-    public ResponseEntity<List<ReferenceDto.Response>> getAllReferences(
-            @RequestParam(required = false) String industry) {
+    @Operation(
+            summary = "Get all references",
+            description = "Retrieve all client references. Served from a cached, pre-serialized body with an ETag"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "List of references",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            array = @ArraySchema(schema = @Schema(implementation = ReferenceDto.ListItem.class)))),
+            @ApiResponse(responseCode = "304", description = "Cached copy is still current")
+    })
+    public ResponseEntity<byte[]> getAllReferences(
+            @RequestParam(required = false) String industry, HttpServletRequest request) {
         
-        List<ReferenceDto.Response> references;
-        if (industry != null && !industry.isBlank()) {
-            references = referenceService.getReferencesByIndustry(industry);
-        } else {
-            references = referenceService.getAllReferences();
-        }
-        return ResponseEntity.ok(references);
+        JsonSnapshot snapshot = industry != null && !industry.isBlank()
+                ? referenceService.getReferencesByIndustryJson(industry)
+                : referenceService.getAllReferencesJson();
+        return ContentNegotiation.json(request, snapshot);
+    }
+    
+    @GetMapping("/changes")
+    @Operation(
+            summary = "Get changes since a sync token",
+            description = "Created or changed references in full and the ids of deleted ones since 'since', plus the "
+                    + "token for the next call. Omit 'since' for everything; 'reset' means the token was not "
+                    + "recognised and the local copy should be replaced"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Changes since the token"),
+            @ApiResponse(responseCode = "400", description = "Malformed token")
+    })
+    public ResponseEntity<SyncDto.Changes<ReferenceDto.Response>> getChanges(
+            @RequestParam(required = false) String since) {
+        return ResponseEntity.ok(referenceService.getChangesSince(since));
     }
     
     @GetMapping("/{id}")
@@ -58,7 +81,7 @@ public class ReferenceController {
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Create a new reference", 
-            description = "Create a new client reference (admin only)",
+            description = "Create a new client reference (admin only). Parts: 'data' (JSON) and optional 'logo'",
             security = @SecurityRequirement(name = "basicAuth")
     )
     @ApiResponses(value = {
@@ -66,19 +89,19 @@ public class ReferenceController {
             @ApiResponse(responseCode = "400", description = "Invalid input"),
             @ApiResponse(responseCode = "401", description = "Unauthorized")
     })
-    public ResponseEntity<ReferenceDto.Response> createReference(
-            @Valid @RequestPart("data") ReferenceDto.CreateRequest request,
-            @Parameter(description = "Company logo image")
-            @RequestPart(value = "logo", required = false) MultipartFile logo) {
-        
-        ReferenceDto.Response created = referenceService.createReference(request, logo);
-        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    public ResponseEntity<ReferenceDto.Response> createReference(HttpServletRequest request) {
+        try (StreamingUploadService.ParsedUpload<ReferenceDto.CreateRequest> upload = streamingUploadService.parse(
+                request, ReferenceDto.CreateRequest.class, "logo", "logos")) {
+            
+            ReferenceDto.Response created = referenceService.createReference(upload.data(), upload.file());
+            return ResponseEntity.status(HttpStatus.CREATED).body(created);
+        }
     }
     
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Update a reference", 
-            description = "Update an existing reference (admin only)",
+            description = "Update an existing reference (admin only). Parts: 'data' (JSON) and optional 'logo'",
             security = @SecurityRequirement(name = "basicAuth")
     )
     @ApiResponses(value = {
@@ -89,11 +112,13 @@ public class ReferenceController {
     })
     public ResponseEntity<ReferenceDto.Response> updateReference(
             @PathVariable UUID id,
-            @Valid @RequestPart("data") ReferenceDto.UpdateRequest request,
-            @Parameter(description = "New company logo image")
-            @RequestPart(value = "logo", required = false) MultipartFile logo) {
+            HttpServletRequest request) {
         
-        return ResponseEntity.ok(referenceService.updateReference(id, request, logo));
+        try (StreamingUploadService.ParsedUpload<ReferenceDto.UpdateRequest> upload = streamingUploadService.parse(
+                request, ReferenceDto.UpdateRequest.class, "logo", "logos")) {
+            
+            return ResponseEntity.ok(referenceService.updateReference(id, upload.data(), upload.file()));
+        }
     }
     
     @DeleteMapping("/{id}")
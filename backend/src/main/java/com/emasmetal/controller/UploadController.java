@@ -0,0 +1,142 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.entity.ResumableUpload;
+import com.emasmetal.service.ResumableUploadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Resumable uploads for contact attachments, following the core and creation parts of tus 1.0.
+ * The id returned here is sent as {@code uploadId} with the contact message.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+@Tag(name = "Uploads", description = "Resumable uploads for large contact attachments")
+public class UploadController {
+
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_METADATA = "Upload-Metadata";
+    private static final String UPLOAD_EXPIRES = "Upload-Expires";
+    private static final String OFFSET_OCTET_STREAM = "application/offset+octet-stream";
+
+    private final ResumableUploadService resumableUploadService;
+
+    @PostMapping
+    @Operation(
+            summary = "Create a resumable upload",
+            description = "Announce an attachment of Upload-Length bytes. Upload-Metadata must carry the "
+                    + "base64-encoded filename, e.g. 'filename ZHJhd2luZy5zdGVw'"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Upload created; Location holds its URL"),
+            @ApiResponse(responseCode = "400", description = "Invalid file type or size")
+    })
+    public ResponseEntity<Void> createUpload(
+            @RequestHeader(UPLOAD_LENGTH) long uploadLength,
+            @RequestHeader(UPLOAD_METADATA) String uploadMetadata) {
+
+        String filename = parseFilename(uploadMetadata);
+        ResumableUpload upload = resumableUploadService.create(filename, uploadLength, "attachments");
+
+        return ResponseEntity.created(URI.create("/api/uploads/" + upload.getId()))
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, "0")
+                .header(UPLOAD_EXPIRES, expires(upload))
+                .build();
+    }
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    @Operation(summary = "Get upload offset", description = "Returns how many bytes have been received so far")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Offset in the Upload-Offset header"),
+            @ApiResponse(responseCode = "404", description = "Upload not found or expired")
+    })
+    public ResponseEntity<Void> getOffset(@PathVariable UUID id) {
+        ResumableUpload upload = resumableUploadService.getUpload(id);
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(upload.getUploadOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.getUploadLength()))
+                .build();
+    }
+
+    @PatchMapping(value = "/{id}", consumes = OFFSET_OCTET_STREAM)
+    @Operation(
+            summary = "Upload a chunk",
+            description = "Append the request body at Upload-Offset, which must equal the current offset"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Chunk stored; new offset in Upload-Offset"),
+            @ApiResponse(responseCode = "404", description = "Upload not found or expired"),
+            @ApiResponse(responseCode = "409", description = "Offset mismatch or upload already complete")
+    })
+    public ResponseEntity<Void> uploadChunk(
+            @PathVariable UUID id,
+            @RequestHeader(UPLOAD_OFFSET) long uploadOffset,
+            HttpServletRequest request) throws IOException {
+
+        ResumableUpload upload = resumableUploadService.append(
+                id, uploadOffset, request.getContentLengthLong(), request.getInputStream());
+
+        return ResponseEntity.status(HttpStatus.NO_CONTENT)
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(upload.getUploadOffset()))
+                .header(UPLOAD_EXPIRES, expires(upload))
+                .build();
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(summary = "Cancel an upload", description = "Discard an upload that will not be used")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Upload discarded"),
+            @ApiResponse(responseCode = "404", description = "Upload not found or expired")
+    })
+    public ResponseEntity<Void> deleteUpload(@PathVariable UUID id) {
+        resumableUploadService.delete(id);
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .build();
+    }
+
+    private String expires(ResumableUpload upload) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                resumableUploadService.expiresAt(upload).atZone(ZoneId.systemDefault()));
+    }
+
+    // Upload-Metadata is a comma-separated list of "key base64(value)" pairs
+    private static String parseFilename(String uploadMetadata) {
+        for (String pair : uploadMetadata.split(",")) {
+            String[] parts = pair.trim().split(" ", 2);
+            if (parts[0].equals("filename") && parts.length == 2) {
+                try {
+                    return new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Upload-Metadata filename is not valid base64");
+                }
+            }
+        }
+        throw new IllegalArgumentException("Upload-Metadata must include a filename");
+    }
+}
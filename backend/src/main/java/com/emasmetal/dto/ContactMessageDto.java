@@ -9,6 +9,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public class ContactMessageDto {
@@ -30,6 +31,18 @@ public class ContactMessageDto {
         private LocalDateTime createdAt;
     }
     
+    // Inbox row: leaves out the message body and the attachment, fetched with the full message
+    public record Summary(
+            UUID id,
+            String name,
+            String company,
+            String email,
+            String phone,
+            boolean hasAttachment,
+            Boolean isRead,
+            LocalDateTime createdAt) {
+    }
+    
     @Data
     @Builder
     @NoArgsConstructor
@@ -53,6 +66,29 @@ public class ContactMessageDto {
         @NotBlank(message = "Message is required")
         @Size(min = 10, max = 2000, message = "Message must be between 10 and 2000 characters")
         private String message;
+        
+        // Id of a finished resumable upload, used instead of an attachment part
+        private UUID uploadId;
+    }
+    
+    // Messages to act on: the listed ids, those created before olderThan, or the listed ids among those
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkRequest {
+        @Size(max = 1000, message = "At most 1000 ids per request")
+        private List<UUID> ids;
+        
+        private LocalDateTime olderThan;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkResponse {
+        private int affected;
     }
     
     @Data
@@ -8,6 +8,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 public class GalleryItemDto {
@@ -21,12 +22,34 @@ public class GalleryItemDto {
         private String title;
         private String imageUrl;
         private String thumbnailUrl;
+        private Map<Integer, String> imageVariants;
+        private Integer width;
+        private Integer height;
+        private String dominantColor;
+        private String blurHash;
         private String category;
         private String description;
         private Integer displayOrder;
         private LocalDateTime createdAt;
     }
     
+    // Listing row, selected straight from the table; serializes like Response
+    public record ListItem(
+            UUID id,
+            String title,
+            String imageUrl,
+            String thumbnailUrl,
+            Map<Integer, String> imageVariants,
+            Integer width,
+            Integer height,
+            String dominantColor,
+            String blurHash,
+            String category,
+            String description,
+            Integer displayOrder,
+            LocalDateTime createdAt) {
+    }
+    
     @Data
     @Builder
     @NoArgsConstructor
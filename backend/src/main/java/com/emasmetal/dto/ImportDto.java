@@ -0,0 +1,40 @@
+package com.emasmetal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public class ImportDto {
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Progress {
+        private UUID id;
+        private String kind; // "gallery" or "references"
+        private String status; // "receiving", "processing", "completed" or "failed"
+        private int total; // manifest rows
+        private int processed; // created + failed
+        private int created;
+        private int failed;
+        private List<Failure> failures;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Failure {
+        private int row; // 1-based manifest row, not counting the CSV header
+        private String file;
+        private String message;
+    }
+}
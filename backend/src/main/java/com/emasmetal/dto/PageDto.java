@@ -0,0 +1,20 @@
+package com.emasmetal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+public class PageDto {
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CursorPage<T> {
+        private List<T> items;
+        private String nextCursor; // pass as ?cursor= for the following page; null on the last one
+    }
+}
@@ -21,12 +21,32 @@ public class ReferenceDto {
         private String name;
         private String websiteUrl;
         private String logoUrl;
+        private Integer logoWidth;
+        private Integer logoHeight;
+        private String logoDominantColor;
+        private String logoBlurHash;
         private String industry;
         private String description;
         private Integer displayOrder;
         private LocalDateTime createdAt;
     }
     
+    // Listing row, selected straight from the table; serializes like Response
+    public record ListItem(
+            UUID id,
+            String name,
+            String websiteUrl,
+            String logoUrl,
+            Integer logoWidth,
+            Integer logoHeight,
+            String logoDominantColor,
+            String logoBlurHash,
+            String industry,
+            String description,
+            Integer displayOrder,
+            LocalDateTime createdAt) {
+    }
+    
     @Data
     @Builder
     @NoArgsConstructor
@@ -0,0 +1,54 @@
+package com.emasmetal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public class StorageDto {
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReconcileReport {
+        private String mode; // "quarantine", "delete" or "report"
+        private LocalDateTime startedAt;
+        private long durationMs;
+        private long referencedUrls;
+        private long filesScanned;
+        private long unreferencedFiles;
+        private long skippedRecentFiles; // unreferenced but still inside the grace period
+        private long removedFiles;
+        private long removedTempFiles;
+        private long purgedQuarantineFiles;
+        private long danglingReferences;
+        private List<DanglingReference> danglingSamples;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LayoutMigrationReport {
+        private LocalDateTime startedAt;
+        private long durationMs;
+        private long filesMoved;
+        private long failedMoves; // left in place, picked up by the next run
+        private long rowsUpdated;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DanglingReference {
+        private String table;
+        private UUID id;
+        private String url;
+    }
+}
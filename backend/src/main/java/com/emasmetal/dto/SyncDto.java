@@ -0,0 +1,23 @@
+package com.emasmetal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+public class SyncDto {
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Changes<T> {
+        private List<T> upserts; // created or changed since the token, as full items
+        private List<UUID> deletes;
+        private String token; // pass as ?since= on the next call
+        private boolean reset; // the token was not recognised: drop the local copy, upserts hold everything
+    }
+}
@@ -0,0 +1,54 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The latest change to a synced entity. Each entity has at most one entry; a new change replaces
+ * it under a higher version, and a deletion stays behind as a tombstone.
+ */
+@Entity
+@Table(name = "change_log",
+        uniqueConstraints = @UniqueConstraint(name = "uk_change_log_entity", columnNames = {"entity_type", "entity_id"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeLogEntry {
+    
+    public enum EntityType {
+        GALLERY, REFERENCE
+    }
+    
+    public enum Operation {
+        UPSERT, DELETE
+    }
+    
+    // One sequence for all types; versions are handed out under a lock, so they commit in order
+    @Id
+    @SequenceGenerator(name = "change_log_seq", sequenceName = "change_log_seq", allocationSize = 1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_log_seq")
+    private Long version;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false, length = 20)
+    private EntityType entityType;
+    
+    @Column(name = "entity_id", nullable = false)
+    private UUID entityId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Operation operation;
+    
+    @CreationTimestamp
+    @Column(name = "changed_at", updatable = false)
+    private LocalDateTime changedAt;
+}
@@ -19,7 +19,7 @@ import java.util.UUID;
 public class ContactMessage {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidV7
     private UUID id;
     
     @Column(nullable = false)
@@ -0,0 +1,51 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A file that a committed transaction stopped referencing, waiting to be removed from storage.
+ */
+@Entity
+@Table(name = "file_deletions")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileDeletion {
+    
+    @Id
+    @UuidV7
+    private UUID id;
+    
+    @Column(name = "file_url", nullable = false, length = 512)
+    private String fileUrl;
+    
+    // Variants and the like: removed only once fileUrl itself is, i.e. no other row shares it
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "derived_urls", columnDefinition = "jsonb")
+    private List<String> derivedUrls;
+    
+    @Column(nullable = false)
+    private Integer attempts;
+    
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -6,8 +6,11 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Entity
@@ -19,7 +22,7 @@ import java.util.UUID;
 public class GalleryItem {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidV7
     private UUID id;
     
     @Column(nullable = false)
@@ -31,6 +34,13 @@ public class GalleryItem {
     @Column(name = "thumbnail_url")
     private String thumbnailUrl;
     
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "image_variants", columnDefinition = "jsonb")
+    private Map<Integer, String> imageVariants; // width in px -> URL, null until generated
+    
+    @Embedded
+    private ImageMetadata imageMetadata; // null when the image could not be decoded
+    
     @Column(name = "category")
     private String category; // "Milling", "Turning", "Parts", "Factory"
     
@@ -0,0 +1,31 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What a client needs to lay out and fill an image slot before the image itself has loaded.
+ */
+@Embeddable
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageMetadata {
+    
+    @Column(name = "image_width")
+    private Integer width;
+    
+    @Column(name = "image_height")
+    private Integer height;
+    
+    @Column(name = "dominant_color", length = 7)
+    private String dominantColor; // "#rrggbb"
+    
+    @Column(name = "blur_hash", length = 64)
+    private String blurHash;
+}
@@ -19,7 +19,7 @@ import java.util.UUID;
 public class Reference {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidV7
     private UUID id;
     
     @Column(nullable = false)
@@ -31,6 +31,13 @@ public class Reference {
     @Column(name = "logo_url")
     private String logoUrl;
     
+    @Embedded
+    @AttributeOverride(name = "width", column = @Column(name = "logo_width"))
+    @AttributeOverride(name = "height", column = @Column(name = "logo_height"))
+    @AttributeOverride(name = "dominantColor", column = @Column(name = "logo_dominant_color", length = 7))
+    @AttributeOverride(name = "blurHash", column = @Column(name = "logo_blur_hash", length = 64))
+    private ImageMetadata logoMetadata;
+    
     @Column(name = "industry")
     private String industry;
     
@@ -0,0 +1,58 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * An upload sent in chunks. Bytes are appended to a staging file until {@code uploadOffset}
+ * reaches {@code uploadLength}; the finished file is then stored and its URL kept here until
+ * a contact message claims it.
+ */
+@Entity
+@Table(name = "resumable_uploads")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumableUpload {
+    
+    @Id
+    @UuidV7
+    private UUID id;
+    
+    @Column(name = "sub_directory", nullable = false, length = 50)
+    private String subDirectory;
+    
+    @Column(name = "original_filename", nullable = false)
+    private String originalFilename;
+    
+    @Column(name = "upload_length", nullable = false)
+    private Long uploadLength;
+    
+    @Column(name = "upload_offset", nullable = false)
+    @Builder.Default
+    private Long uploadOffset = 0L;
+    
+    @Column(name = "stored_url", length = 512)
+    private String storedUrl;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+    
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public boolean isComplete() {
+        return storedUrl != null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A content-addressed upload ({@code <category>/<sha256>.<ext>}) and the number of
+ * database rows that currently point at it.
+ */
+@Entity
+@Table(name = "stored_files")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredFile {
+    
+    @Id
+    @Column(name = "storage_key", length = 512)
+    private String storageKey;
+    
+    @Column(nullable = false, length = 64)
+    private String digest;
+    
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+    
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+    
+    // Last time an upload was stored or deduplicated onto this file
+    @Column(name = "last_acquired_at")
+    private LocalDateTime lastAcquiredAt;
+}
@@ -0,0 +1,40 @@
+package com.emasmetal.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UUIDv7: a 48-bit Unix millisecond timestamp, then a 12-bit counter (RFC 9562, method 1), then
+ * 62 random bits. Ids from this JVM are strictly increasing: the counter orders ids within a
+ * millisecond, and when it runs out, or the clock steps back, the timestamp is carried forward
+ * instead. Ids from other replicas are kept apart by the random bits.
+ */
+public class UuidV7Generator implements IdentifierGenerator {
+
+    private static final int COUNTER_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3fff_ffff_ffff_ffffL;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Timestamp and counter of the last id, as (millis << 12) | counter
+    private static final AtomicLong LAST = new AtomicLong();
+
+    public static UUID next() {
+        long now = System.currentTimeMillis() << COUNTER_BITS;
+        long stamp = LAST.updateAndGet(last -> Math.max(now, last + 1));
+        long msb = (stamp >>> COUNTER_BITS) << 16 | VERSION | (stamp & ((1L << COUNTER_BITS) - 1));
+        long lsb = VARIANT | (RANDOM.nextLong() & RANDOM_MASK);
+        return new UUID(msb, lsb);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return next();
+    }
+}
@@ -0,0 +1,16 @@
+package com.emasmetal.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ConflictException extends RuntimeException {
+    
+    public ConflictException(String message) {
+        super(message);
+    }
+    
+    public ConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,6 +5,7 @@ import com.emasmetal.dto.GalleryItemDto;
 import com.emasmetal.dto.ReferenceDto;
 import com.emasmetal.entity.ContactMessage;
 import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.entity.ImageMetadata;
 import com.emasmetal.entity.Reference;
 import org.springframework.stereotype.Component;
 
@@ -15,11 +16,16 @@ public class DtoMapper {
     public ReferenceDto.Response toResponse(Reference entity) {
         if (entity == null) return null;
         
+        ImageMetadata logo = entity.getLogoMetadata() != null ? entity.getLogoMetadata() : new ImageMetadata();
         return ReferenceDto.Response.builder()
                 .id(entity.getId())
                 .name(entity.getName())
                 .websiteUrl(entity.getWebsiteUrl())
                 .logoUrl(entity.getLogoUrl())
+                .logoWidth(logo.getWidth())
+                .logoHeight(logo.getHeight())
+                .logoDominantColor(logo.getDominantColor())
+                .logoBlurHash(logo.getBlurHash())
                 .industry(entity.getIndustry())
                 .description(entity.getDescription())
                 .displayOrder(entity.getDisplayOrder())
@@ -51,11 +57,17 @@ public class DtoMapper {
     public GalleryItemDto.Response toResponse(GalleryItem entity) {
         if (entity == null) return null;
         
+        ImageMetadata image = entity.getImageMetadata() != null ? entity.getImageMetadata() : new ImageMetadata();
         return GalleryItemDto.Response.builder()
                 .id(entity.getId())
                 .title(entity.getTitle())
                 .imageUrl(entity.getImageUrl())
                 .thumbnailUrl(entity.getThumbnailUrl())
+                .imageVariants(entity.getImageVariants())
+                .width(image.getWidth())
+                .height(image.getHeight())
+                .dominantColor(image.getDominantColor())
+                .blurHash(image.getBlurHash())
                 .category(entity.getCategory())
                 .description(entity.getDescription())
                 .displayOrder(entity.getDisplayOrder())
@@ -0,0 +1,59 @@
+package com.emasmetal.repository;
+
+import com.emasmetal.entity.ChangeLogEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+    
+    // Held until the transaction ends, so versions are taken and committed one writer at a time
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(:key)", nativeQuery = true)
+    int lock(@Param("key") long key);
+    
+    List<ChangeLogEntry> findByEntityTypeAndVersionGreaterThanOrderByVersionAsc(
+            ChangeLogEntry.EntityType entityType, long version);
+    
+    @Query("select coalesce(max(c.version), 0) from ChangeLogEntry c")
+    long latestVersion();
+    
+    @Modifying
+    @Query("delete from ChangeLogEntry c where c.entityType = :entityType and c.entityId = :entityId")
+    int remove(@Param("entityType") ChangeLogEntry.EntityType entityType, @Param("entityId") UUID entityId);
+    
+    // One new version per entity; an entity already in the log moves to its new version
+    @Modifying
+    @Query(value = """
+            INSERT INTO change_log (version, entity_type, entity_id, operation, changed_at)
+            SELECT nextval('change_log_seq'), :entityType, id, 'UPSERT', now()
+            FROM unnest(CAST(:entityIds AS uuid[])) AS id
+            ON CONFLICT (entity_type, entity_id) DO UPDATE
+            SET version = EXCLUDED.version, operation = EXCLUDED.operation, changed_at = EXCLUDED.changed_at
+            """, nativeQuery = true)
+    int upsertAll(@Param("entityType") String entityType, @Param("entityIds") UUID[] entityIds);
+    
+    // Rows created without going through a service (seed data, manual inserts)
+    @Modifying
+    @Query(value = """
+            INSERT INTO change_log (version, entity_type, entity_id, operation, changed_at)
+            SELECT nextval('change_log_seq'), 'GALLERY', g.id, 'UPSERT', now()
+            FROM gallery_items g
+            WHERE NOT EXISTS (SELECT 1 FROM change_log c WHERE c.entity_type = 'GALLERY' AND c.entity_id = g.id)
+            """, nativeQuery = true)
+    int addUnloggedGalleryItems();
+    
+    @Modifying
+    @Query(value = """
+            INSERT INTO change_log (version, entity_type, entity_id, operation, changed_at)
+            SELECT nextval('change_log_seq'), 'REFERENCE', r.id, 'UPSERT', now()
+            FROM company_references r
+            WHERE NOT EXISTS (SELECT 1 FROM change_log c WHERE c.entity_type = 'REFERENCE' AND c.entity_id = r.id)
+            """, nativeQuery = true)
+    int addUnloggedReferences();
+}
@@ -1,18 +1,102 @@
 package com.emasmetal.repository;
 
+import com.emasmetal.dto.ContactMessageDto;
 import com.emasmetal.entity.ContactMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ContactMessageRepository extends JpaRepository<ContactMessage, UUID> {
     
-    List<ContactMessage> findAllByOrderByCreatedAtDesc();
+    long countByIsReadFalse();
     
-    List<ContactMessage> findByIsReadFalseOrderByCreatedAtDesc();
+    // Row-locking, so concurrent reads and deletes of one message each see its latest state
+    @Modifying
+    @Query("update ContactMessage m set m.isRead = true where m.id = :id and m.isRead = false")
+    int markRead(@Param("id") UUID id);
     
-    long countByIsReadFalse();
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select m from ContactMessage m where m.id = :id")
+    Optional<ContactMessage> findByIdForUpdate(@Param("id") UUID id);
+    
+    // Bulk changes, each a single statement over the listed ids and/or the rows created before a time
+    @Modifying
+    @Query(value = """
+            UPDATE contact_messages SET is_read = true
+            WHERE is_read = false AND id = ANY(CAST(:ids AS uuid[])) AND created_at < :before
+            """, nativeQuery = true)
+    int markReadByIds(@Param("ids") UUID[] ids, @Param("before") LocalDateTime before);
+    
+    @Modifying
+    @Query(value = "UPDATE contact_messages SET is_read = true WHERE is_read = false AND created_at < :before",
+            nativeQuery = true)
+    int markReadBefore(@Param("before") LocalDateTime before);
+    
+    interface DeletedMessage {
+        String getAttachmentUrl();
+        boolean isUnread();
+    }
+    
+    @Query(value = """
+            DELETE FROM contact_messages
+            WHERE id = ANY(CAST(:ids AS uuid[])) AND created_at < :before
+            RETURNING attachment_url AS "attachmentUrl", is_read = false AS "unread"
+            """, nativeQuery = true)
+    List<DeletedMessage> deleteByIds(@Param("ids") UUID[] ids, @Param("before") LocalDateTime before);
+    
+    @Query(value = """
+            DELETE FROM contact_messages
+            WHERE created_at < :before
+            RETURNING attachment_url AS "attachmentUrl", is_read = false AS "unread"
+            """, nativeQuery = true)
+    List<DeletedMessage> deleteBefore(@Param("before") LocalDateTime before);
+    
+    // Keyset pages of inbox rows, newest first, following the row at (createdAt, id). Only the
+    // summary columns are read; the message body and attachment stay in the table.
+    @Query("""
+            select new com.emasmetal.dto.ContactMessageDto$Summary(m.id, m.name, m.company, m.email, m.phone,
+                m.attachmentUrl is not null, m.isRead, m.createdAt)
+            from ContactMessage m
+            where (m.createdAt, m.id) < (:createdAt, :id)
+            order by m.createdAt desc, m.id desc
+            """)
+    List<ContactMessageDto.Summary> findSummariesBefore(@Param("createdAt") LocalDateTime createdAt,
+                                                        @Param("id") UUID id, Limit limit);
+    
+    @Query("""
+            select new com.emasmetal.dto.ContactMessageDto$Summary(m.id, m.name, m.company, m.email, m.phone,
+                m.attachmentUrl is not null, m.isRead, m.createdAt)
+            from ContactMessage m
+            where m.isRead = false and (m.createdAt, m.id) < (:createdAt, :id)
+            order by m.createdAt desc, m.id desc
+            """)
+    List<ContactMessageDto.Summary> findUnreadSummariesBefore(@Param("createdAt") LocalDateTime createdAt,
+                                                              @Param("id") UUID id, Limit limit);
+    
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select m.id as id, m.attachmentUrl as url from ContactMessage m where m.attachmentUrl is not null")
+    Stream<FileReference> streamAttachmentUrls();
+    
+    @Modifying
+    @Query(value = """
+            WITH moved(old_url, new_url) AS (
+                SELECT * FROM unnest(CAST(:oldUrls AS text[]), CAST(:newUrls AS text[])))
+            UPDATE contact_messages t SET attachment_url = m.new_url FROM moved m WHERE t.attachment_url = m.old_url
+            """, nativeQuery = true)
+    int rewriteAttachmentUrls(@Param("oldUrls") String[] oldUrls, @Param("newUrls") String[] newUrls);
 }
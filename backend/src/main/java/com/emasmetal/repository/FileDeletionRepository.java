@@ -0,0 +1,48 @@
+package com.emasmetal.repository;
+
+import com.emasmetal.entity.FileDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface FileDeletionRepository extends JpaRepository<FileDeletion, UUID> {
+    
+    // Rows another replica has locked are skipped rather than waited for
+    @Query(value = """
+            SELECT * FROM file_deletions
+            WHERE next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<FileDeletion> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+    
+    @Modifying
+    @Query("update FileDeletion d set d.attempts = d.attempts + 1, d.nextAttemptAt = :until where d.id in :ids")
+    int lease(@Param("ids") Collection<UUID> ids, @Param("until") LocalDateTime until);
+    
+    @Modifying
+    @Query("update FileDeletion d set d.nextAttemptAt = :retryAt, d.lastError = :error where d.id = :id")
+    int reschedule(@Param("id") UUID id, @Param("retryAt") LocalDateTime retryAt, @Param("error") String error);
+    
+    @Modifying
+    @Query("delete from FileDeletion d where d.id = :id")
+    int remove(@Param("id") UUID id);
+    
+    // One row per (ids[i], fileUrls[i]), due at once
+    @Modifying
+    @Query(value = """
+            INSERT INTO file_deletions (id, file_url, attempts, next_attempt_at, created_at)
+            SELECT q.id, q.file_url, 0, :now, :now
+            FROM unnest(CAST(:ids AS uuid[]), CAST(:fileUrls AS text[])) AS q(id, file_url)
+            """, nativeQuery = true)
+    int insertAll(@Param("ids") UUID[] ids, @Param("fileUrls") String[] fileUrls, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,13 @@
+package com.emasmetal.repository;
+
+import java.util.UUID;
+
+/**
+ * A row id and one upload URL it points at, for scans that must not load whole entities.
+ */
+public interface FileReference {
+    
+    UUID getId();
+    
+    String getUrl();
+}
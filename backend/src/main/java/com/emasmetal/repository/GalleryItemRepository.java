@@ -1,18 +1,119 @@
 package com.emasmetal.repository;
 
+import com.emasmetal.dto.GalleryItemDto;
 import com.emasmetal.entity.GalleryItem;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface GalleryItemRepository extends JpaRepository<GalleryItem, UUID> {
     
-    List<GalleryItem> findAllByOrderByDisplayOrderAscCreatedAtDesc();
+    // Listing rows as records, read without putting entities in the persistence context
+    @Query("""
+            select new com.emasmetal.dto.GalleryItemDto$ListItem(g.id, g.title, g.imageUrl, g.thumbnailUrl,
+                g.imageVariants, g.imageMetadata.width, g.imageMetadata.height, g.imageMetadata.dominantColor,
+                g.imageMetadata.blurHash, g.category, g.description, g.displayOrder, g.createdAt)
+            from GalleryItem g
+            order by g.displayOrder asc, g.createdAt desc
+            """)
+    List<GalleryItemDto.ListItem> findAllListItems();
     
-    List<GalleryItem> findByCategoryOrderByDisplayOrderAsc(String category);
+    @Query("""
+            select new com.emasmetal.dto.GalleryItemDto$ListItem(g.id, g.title, g.imageUrl, g.thumbnailUrl,
+                g.imageVariants, g.imageMetadata.width, g.imageMetadata.height, g.imageMetadata.dominantColor,
+                g.imageMetadata.blurHash, g.category, g.description, g.displayOrder, g.createdAt)
+            from GalleryItem g
+            where g.category = :category
+            order by g.displayOrder asc
+            """)
+    List<GalleryItemDto.ListItem> findListItemsByCategory(@Param("category") String category);
     
     List<GalleryItem> findByCategoryInOrderByDisplayOrderAsc(List<String> categories);
+    
+    List<GalleryItem> findByImageVariantsIsNullAndImageUrlStartingWith(String prefix);
+    
+    // Keyset pages in listing order (display_order, then newest first, nulls last) are read in
+    // up to three steps, each a bounded range scan of idx_gallery_items_listing: the rest of the
+    // cursor's display order, the higher display orders, then the rows without one.
+    @Query("""
+            select new com.emasmetal.dto.GalleryItemDto$ListItem(g.id, g.title, g.imageUrl, g.thumbnailUrl,
+                g.imageVariants, g.imageMetadata.width, g.imageMetadata.height, g.imageMetadata.dominantColor,
+                g.imageMetadata.blurHash, g.category, g.description, g.displayOrder, g.createdAt)
+            from GalleryItem g
+            where g.displayOrder = :displayOrder and (g.createdAt, g.id) < (:createdAt, :id)
+              and (:category is null or g.category = :category)
+            order by g.createdAt desc, g.id desc
+            """)
+    List<GalleryItemDto.ListItem> findListItemsWithOrderAfter(@Param("displayOrder") int displayOrder,
+                                                              @Param("createdAt") LocalDateTime createdAt,
+                                                              @Param("id") UUID id, @Param("category") String category,
+                                                              Limit limit);
+    
+    @Query("""
+            select new com.emasmetal.dto.GalleryItemDto$ListItem(g.id, g.title, g.imageUrl, g.thumbnailUrl,
+                g.imageVariants, g.imageMetadata.width, g.imageMetadata.height, g.imageMetadata.dominantColor,
+                g.imageMetadata.blurHash, g.category, g.description, g.displayOrder, g.createdAt)
+            from GalleryItem g
+            where g.displayOrder > :displayOrder
+              and (:category is null or g.category = :category)
+            order by g.displayOrder asc, g.createdAt desc, g.id desc
+            """)
+    List<GalleryItemDto.ListItem> findListItemsAfterOrder(@Param("displayOrder") int displayOrder,
+                                                          @Param("category") String category, Limit limit);
+    
+    @Query("""
+            select new com.emasmetal.dto.GalleryItemDto$ListItem(g.id, g.title, g.imageUrl, g.thumbnailUrl,
+                g.imageVariants, g.imageMetadata.width, g.imageMetadata.height, g.imageMetadata.dominantColor,
+                g.imageMetadata.blurHash, g.category, g.description, g.displayOrder, g.createdAt)
+            from GalleryItem g
+            where g.displayOrder is null and (g.createdAt, g.id) < (:createdAt, :id)
+              and (:category is null or g.category = :category)
+            order by g.createdAt desc, g.id desc
+            """)
+    List<GalleryItemDto.ListItem> findUnorderedListItemsAfter(@Param("createdAt") LocalDateTime createdAt,
+                                                              @Param("id") UUID id, @Param("category") String category,
+                                                              Limit limit);
+    
+    interface FileReferences {
+        UUID getId();
+        String getImageUrl();
+        String getThumbnailUrl();
+        Map<Integer, String> getImageVariants();
+    }
+    
+    // Streams only the URL columns, so a full scan never materialises entities
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select g.id as id, g.imageUrl as imageUrl, g.thumbnailUrl as thumbnailUrl, g.imageVariants as imageVariants from GalleryItem g")
+    Stream<FileReferences> streamFileReferences();
+    
+    // oldUrls[i] becomes newUrls[i] wherever it appears, including inside image_variants
+    @Modifying
+    @Query(value = """
+            WITH moved(old_url, new_url) AS (
+                SELECT * FROM unnest(CAST(:oldUrls AS text[]), CAST(:newUrls AS text[])))
+            UPDATE gallery_items g SET
+                image_url = COALESCE((SELECT new_url FROM moved WHERE old_url = g.image_url), g.image_url),
+                thumbnail_url = COALESCE((SELECT new_url FROM moved WHERE old_url = g.thumbnail_url), g.thumbnail_url),
+                image_variants = COALESCE((SELECT jsonb_object_agg(v.key, COALESCE(m.new_url, v.value))
+                                           FROM jsonb_each_text(g.image_variants) v
+                                           LEFT JOIN moved m ON m.old_url = v.value), g.image_variants)
+            WHERE g.image_url IN (SELECT old_url FROM moved)
+               OR g.thumbnail_url IN (SELECT old_url FROM moved)
+               OR EXISTS (SELECT 1 FROM jsonb_each_text(g.image_variants) v
+                          WHERE v.value IN (SELECT old_url FROM moved))
+            """, nativeQuery = true)
+    int rewriteFileUrls(@Param("oldUrls") String[] oldUrls, @Param("newUrls") String[] newUrls);
 }
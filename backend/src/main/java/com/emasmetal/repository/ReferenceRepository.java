@@ -1,16 +1,52 @@
 package com.emasmetal.repository;
 
+import com.emasmetal.dto.ReferenceDto;
 import com.emasmetal.entity.Reference;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ReferenceRepository extends JpaRepository<Reference, UUID> {
     
-    List<Reference> findAllByOrderByDisplayOrderAscCreatedAtDesc();
+    // Listing rows as records, read without putting entities in the persistence context
+    @Query("""
+            select new com.emasmetal.dto.ReferenceDto$ListItem(r.id, r.name, r.websiteUrl, r.logoUrl,
+                r.logoMetadata.width, r.logoMetadata.height, r.logoMetadata.dominantColor, r.logoMetadata.blurHash,
+                r.industry, r.description, r.displayOrder, r.createdAt)
+            from Reference r
+            order by r.displayOrder asc, r.createdAt desc
+            """)
+    List<ReferenceDto.ListItem> findAllListItems();
     
-    List<Reference> findByIndustryOrderByDisplayOrderAsc(String industry);
+    @Query("""
+            select new com.emasmetal.dto.ReferenceDto$ListItem(r.id, r.name, r.websiteUrl, r.logoUrl,
+                r.logoMetadata.width, r.logoMetadata.height, r.logoMetadata.dominantColor, r.logoMetadata.blurHash,
+                r.industry, r.description, r.displayOrder, r.createdAt)
+            from Reference r
+            where r.industry = :industry
+            order by r.displayOrder asc
+            """)
+    List<ReferenceDto.ListItem> findListItemsByIndustry(@Param("industry") String industry);
+    
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select r.id as id, r.logoUrl as url from Reference r where r.logoUrl is not null")
+    Stream<FileReference> streamLogoUrls();
+    
+    @Modifying
+    @Query(value = """
+            WITH moved(old_url, new_url) AS (
+                SELECT * FROM unnest(CAST(:oldUrls AS text[]), CAST(:newUrls AS text[])))
+            UPDATE company_references t SET logo_url = m.new_url FROM moved m WHERE t.logo_url = m.old_url
+            """, nativeQuery = true)
+    int rewriteLogoUrls(@Param("oldUrls") String[] oldUrls, @Param("newUrls") String[] newUrls);
 }
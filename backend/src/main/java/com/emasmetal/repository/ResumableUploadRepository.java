@@ -0,0 +1,44 @@
+package com.emasmetal.repository;
+
+import com.emasmetal.entity.ResumableUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@Repository
+public interface ResumableUploadRepository extends JpaRepository<ResumableUpload, UUID> {
+    
+    List<ResumableUpload> findByUpdatedAtBefore(LocalDateTime cutoff);
+    
+    @Query("select u.id as id, u.storedUrl as url from ResumableUpload u where u.storedUrl is not null")
+    Stream<FileReference> streamStoredUrls();
+    
+    @Modifying
+    @Query(value = """
+            WITH moved(old_url, new_url) AS (
+                SELECT * FROM unnest(CAST(:oldUrls AS text[]), CAST(:newUrls AS text[])))
+            UPDATE resumable_uploads t SET stored_url = m.new_url FROM moved m WHERE t.stored_url = m.old_url
+            """, nativeQuery = true)
+    int rewriteStoredUrls(@Param("oldUrls") String[] oldUrls, @Param("newUrls") String[] newUrls);
+    
+    @Transactional
+    @Modifying
+    @Query("update ResumableUpload u set u.uploadOffset = :offset, u.updatedAt = CURRENT_TIMESTAMP where u.id = :id")
+    int updateOffset(@Param("id") UUID id, @Param("offset") long offset);
+    
+    @Modifying
+    @Query("delete from ResumableUpload u where u.id = :id and u.storedUrl is not null")
+    int deleteCompleted(@Param("id") UUID id);
+    
+    @Modifying
+    @Query("delete from ResumableUpload u where u.id = :id")
+    int removeById(@Param("id") UUID id);
+}
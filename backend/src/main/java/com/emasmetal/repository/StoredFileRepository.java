@@ -0,0 +1,68 @@
+package com.emasmetal.repository;
+
+import com.emasmetal.entity.StoredFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface StoredFileRepository extends JpaRepository<StoredFile, String> {
+    
+    // Held until the transaction ends; see FileStorageService.lock
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(:key)", nativeQuery = true)
+    int lock(@Param("key") long key);
+    
+    @Modifying
+    @Query(value = """
+            INSERT INTO stored_files (storage_key, digest, size_bytes, ref_count, created_at, last_acquired_at)
+            VALUES (:storageKey, :digest, :sizeBytes, 1, now(), now())
+            ON CONFLICT (storage_key) DO UPDATE
+                SET ref_count = stored_files.ref_count + 1, last_acquired_at = now()
+            """, nativeQuery = true)
+    void acquire(@Param("storageKey") String storageKey,
+                 @Param("digest") String digest,
+                 @Param("sizeBytes") long sizeBytes);
+    
+    @Modifying
+    @Query("update StoredFile f set f.refCount = f.refCount - 1 where f.storageKey = :storageKey and f.refCount > 0")
+    int release(@Param("storageKey") String storageKey);
+    
+    @Modifying
+    @Query("delete from StoredFile f where f.storageKey = :storageKey and f.refCount <= 0")
+    int deleteIfUnreferenced(@Param("storageKey") String storageKey);
+    
+    @Modifying
+    @Query(value = """
+            UPDATE stored_files target
+            SET ref_count = target.ref_count + source.ref_count,
+                last_acquired_at = greatest(target.last_acquired_at, source.last_acquired_at)
+            FROM stored_files source
+            WHERE target.storage_key = :targetKey AND source.storage_key = :sourceKey
+            """, nativeQuery = true)
+    int addReferences(@Param("sourceKey") String sourceKey, @Param("targetKey") String targetKey);
+    
+    @Modifying
+    @Query("update StoredFile f set f.storageKey = :targetKey where f.storageKey = :sourceKey")
+    int renameKey(@Param("sourceKey") String sourceKey, @Param("targetKey") String targetKey);
+    
+    @Modifying
+    @Query("delete from StoredFile f where f.storageKey = :storageKey")
+    int remove(@Param("storageKey") String storageKey);
+    
+    /**
+     * Hands the references of {@code sourceKey} over to {@code targetKey}, merging them into an
+     * existing row for the target.
+     */
+    default void moveKey(String sourceKey, String targetKey) {
+        if (addReferences(sourceKey, targetKey) > 0) {
+            remove(sourceKey);
+        } else {
+            renameKey(sourceKey, targetKey);
+        }
+    }
+}
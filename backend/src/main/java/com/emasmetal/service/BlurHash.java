@@ -0,0 +1,112 @@
+package com.emasmetal.service;
+
+/**
+ * Encoder for BlurHash (https://blurha.sh): a short string describing a blurred version of an
+ * image as a handful of DCT components, which clients decode into a placeholder.
+ */
+final class BlurHash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private BlurHash() {
+    }
+
+    /**
+     * @param pixels     packed sRGB pixels ({@code 0xRRGGBB}), row by row
+     * @param componentsX horizontal components, 1-9
+     * @param componentsY vertical components, 1-9
+     */
+    static String encode(int[] pixels, int width, int height, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("BlurHash components must be between 1 and 9");
+        }
+
+        float[] linear = new float[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            linear[i * 3] = srgbToLinear((pixels[i] >> 16) & 0xff);
+            linear[i * 3 + 1] = srgbToLinear((pixels[i] >> 8) & 0xff);
+            linear[i * 3 + 2] = srgbToLinear(pixels[i] & 0xff);
+        }
+
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                factors[j * componentsX + i] = basisFactor(linear, width, height, i, j);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+
+        double maximum = 1;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(value));
+                }
+            }
+            int quantisedMaximum = (int) Math.max(0, Math.min(82, Math.floor(actualMaximum * 166 - 0.5)));
+            maximum = (quantisedMaximum + 1) / 166.0;
+            encode83(hash, quantisedMaximum, 1);
+        } else {
+            encode83(hash, 0, 1);
+        }
+
+        double[] dc = factors[0];
+        encode83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            int value = quantiseAc(ac[0], maximum) * 19 * 19 + quantiseAc(ac[1], maximum) * 19 + quantiseAc(ac[2], maximum);
+            encode83(hash, value, 2);
+        }
+        return hash.toString();
+    }
+
+    private static double[] basisFactor(float[] linear, int width, int height, int i, int j) {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        double normalisation = (i == 0 && j == 0) ? 1 : 2;
+
+        for (int y = 0; y < height; y++) {
+            double cosY = Math.cos(Math.PI * j * y / height);
+            for (int x = 0; x < width; x++) {
+                double basis = normalisation * Math.cos(Math.PI * i * x / width) * cosY;
+                int offset = (y * width + x) * 3;
+                r += basis * linear[offset];
+                g += basis * linear[offset + 1];
+                b += basis * linear[offset + 2];
+            }
+        }
+
+        double scale = 1.0 / (width * height);
+        return new double[]{r * scale, g * scale, b * scale};
+    }
+
+    private static int quantiseAc(double value, double maximum) {
+        double signedRoot = Math.copySign(Math.sqrt(Math.abs(value / maximum)), value);
+        return (int) Math.max(0, Math.min(18, Math.floor(signedRoot * 9 + 9.5)));
+    }
+
+    private static float srgbToLinear(int value) {
+        double v = value / 255.0;
+        return (float) (v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4));
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void encode83(StringBuilder target, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            target.append(BASE83.charAt(digit));
+        }
+    }
+}
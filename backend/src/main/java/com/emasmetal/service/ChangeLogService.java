@@ -0,0 +1,128 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.SyncDto;
+import com.emasmetal.entity.ChangeLogEntry;
+import com.emasmetal.repository.ChangeLogRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Versions changes to synced entities so clients can fetch only what changed since their last
+ * sync. A client's token is the highest version it has seen; versions are global and handed out
+ * under a transaction-scoped advisory lock, so no change can commit with a version below one
+ * that a client has already been given.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChangeLogService {
+
+    // Advisory lock id ("emas_syn")
+    private static final long LOCK_KEY = 0x656d61735f73796eL;
+
+    private final ChangeLogRepository changeLogRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordUpsert(ChangeLogEntry.EntityType entityType, UUID entityId) {
+        record(entityType, entityId, ChangeLogEntry.Operation.UPSERT);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDelete(ChangeLogEntry.EntityType entityType, UUID entityId) {
+        record(entityType, entityId, ChangeLogEntry.Operation.DELETE);
+    }
+
+    /**
+     * {@link #recordUpsert} for many entities in one statement, e.g. rows inserted in bulk.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordUpserts(ChangeLogEntry.EntityType entityType, Collection<UUID> entityIds) {
+        if (entityIds.isEmpty()) {
+            return;
+        }
+        changeLogRepository.lock(LOCK_KEY);
+        changeLogRepository.upsertAll(entityType.name(), entityIds.toArray(UUID[]::new));
+    }
+
+    private void record(ChangeLogEntry.EntityType entityType, UUID entityId, ChangeLogEntry.Operation operation) {
+        changeLogRepository.lock(LOCK_KEY);
+        changeLogRepository.remove(entityType, entityId);
+        changeLogRepository.save(ChangeLogEntry.builder()
+                .entityType(entityType)
+                .entityId(entityId)
+                .operation(operation)
+                .build());
+    }
+
+    /**
+     * Changes of one type since {@code token}; {@code loader} maps the ids of changed entities to
+     * their current DTOs. Must run in a repeatable-read transaction, so the entries, the token and
+     * the loaded items come from the same snapshot.
+     *
+     * @param token from an earlier call, or null/empty for everything
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public <T> SyncDto.Changes<T> changesSince(ChangeLogEntry.EntityType entityType, String token,
+                                               Function<Collection<UUID>, Map<UUID, T>> loader) {
+        long since = parseToken(token);
+        long latest = changeLogRepository.latestVersion();
+        // A token from before a database restore, say
+        boolean reset = since > latest;
+        if (reset) {
+            since = 0;
+        }
+
+        List<ChangeLogEntry> entries = changeLogRepository.findByEntityTypeAndVersionGreaterThanOrderByVersionAsc(entityType, since);
+        List<UUID> upserted = new ArrayList<>();
+        List<UUID> deleted = new ArrayList<>();
+        for (ChangeLogEntry entry : entries) {
+            (entry.getOperation() == ChangeLogEntry.Operation.DELETE ? deleted : upserted).add(entry.getEntityId());
+        }
+        Map<UUID, T> items = upserted.isEmpty() ? Map.of() : loader.apply(upserted);
+
+        return SyncDto.Changes.<T>builder()
+                .upserts(upserted.stream().map(items::get).filter(Objects::nonNull).toList())
+                .deletes(reset ? List.of() : deleted)
+                .token(Long.toString(latest))
+                .reset(reset)
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void logUnloggedEntities() {
+        changeLogRepository.lock(LOCK_KEY);
+        int added = changeLogRepository.addUnloggedGalleryItems() + changeLogRepository.addUnloggedReferences();
+        if (added > 0) {
+            log.info("Added {} existing gallery items and references to the change log", added);
+        }
+    }
+
+    private static long parseToken(String token) {
+        if (token == null || token.isBlank()) {
+            return 0;
+        }
+        try {
+            long version = Long.parseLong(token.trim());
+            if (version < 0) {
+                throw new NumberFormatException();
+            }
+            return version;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid sync token: " + token);
+        }
+    }
+}
@@ -1,19 +1,24 @@
 package com.emasmetal.service;
 
 import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.dto.PageDto;
 import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.entity.ResumableUpload;
 import com.emasmetal.exception.ResourceNotFoundException;
 import com.emasmetal.mapper.DtoMapper;
 import com.emasmetal.repository.ContactMessageRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,22 +28,40 @@ public class ContactService {
 
     private final ContactMessageRepository contactMessageRepository;
     private final FileStorageService fileStorageService;
+    private final FileDeletionService fileDeletionService;
+    private final ResumableUploadService resumableUploadService;
     private final EmailService emailService;
     private final DtoMapper dtoMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.pagination.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.pagination.max-size:100}")
+    private int maxPageSize;
 
     public ContactMessageDto.PublicResponse submitContactMessage(
             ContactMessageDto.CreateRequest request,
-            MultipartFile attachment) {
+            StagedFile attachment) {
+
+        if (attachment != null && request.getUploadId() != null) {
+            throw new IllegalArgumentException("Send either an attachment or an uploadId, not both");
+        }
 
         ContactMessage message = dtoMapper.toEntity(request);
 
-        if (attachment != null && !attachment.isEmpty()) {
-            String attachmentUrl = fileStorageService.storeFile(attachment, "attachments");
+        if (attachment != null) {
+            String attachmentUrl = fileStorageService.promote(attachment);
             message.setAttachmentUrl(attachmentUrl);
-            message.setAttachmentFilename(attachment.getOriginalFilename());
+            message.setAttachmentFilename(attachment.originalFilename());
+        } else if (request.getUploadId() != null) {
+            ResumableUpload upload = resumableUploadService.claim(request.getUploadId());
+            message.setAttachmentUrl(upload.getStoredUrl());
+            message.setAttachmentFilename(upload.getOriginalFilename());
         }
 
         ContactMessage saved = contactMessageRepository.save(message);
+        eventPublisher.publishEvent(new UnreadCountChangedEvent(1));
         log.info("Received contact message from: {} <{}> ({})",
                 saved.getName(), saved.getEmail(), saved.getId());
 
@@ -52,20 +75,74 @@ public class ContactService {
                 .build();
     }
 
+    /**
+     * One page of message summaries, newest first, following {@code cursor} (null for the first
+     * page). Each page is a single index range scan, however many messages there are.
+     */
     @Transactional(readOnly = true)
-    public List<ContactMessageDto.Response> getAllMessages() {
-        return contactMessageRepository.findAllByOrderByCreatedAtDesc()
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+    public PageDto.CursorPage<ContactMessageDto.Summary> getMessages(String cursor, Integer size, boolean unreadOnly) {
+        PageCursor after = PageCursor.decode(cursor);
+        int limit = PageCursor.pageSize(size, defaultPageSize, maxPageSize);
+        LocalDateTime createdAt = after == null ? PageCursor.END_OF_TIME : after.createdAt();
+        UUID id = after == null ? PageCursor.MAX_ID : after.id();
+
+        // One row more than asked for tells whether another page follows
+        List<ContactMessageDto.Summary> rows = unreadOnly
+                ? contactMessageRepository.findUnreadSummariesBefore(createdAt, id, Limit.of(limit + 1))
+                : contactMessageRepository.findSummariesBefore(createdAt, id, Limit.of(limit + 1));
+        boolean more = rows.size() > limit;
+        List<ContactMessageDto.Summary> page = more ? rows.subList(0, limit) : rows;
+        ContactMessageDto.Summary last = more ? page.get(page.size() - 1) : null;
+
+        return PageDto.CursorPage.<ContactMessageDto.Summary>builder()
+                .items(List.copyOf(page))
+                .nextCursor(last == null ? null : new PageCursor(null, last.createdAt(), last.id()).encode())
+                .build();
     }
 
-    @Transactional(readOnly = true)
-    public List<ContactMessageDto.Response> getUnreadMessages() {
-        return contactMessageRepository.findByIsReadFalseOrderByCreatedAtDesc()
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+    /**
+     * Marks the messages picked by {@code request} as read, in one statement.
+     */
+    public ContactMessageDto.BulkResponse bulkMarkAsRead(ContactMessageDto.BulkRequest request) {
+        LocalDateTime before = bulkCutoff(request);
+        int marked = request.getIds() == null
+                ? contactMessageRepository.markReadBefore(before)
+                : contactMessageRepository.markReadByIds(request.getIds().toArray(UUID[]::new), before);
+        if (marked > 0) {
+            eventPublisher.publishEvent(new UnreadCountChangedEvent(-marked));
+        }
+        log.info("Marked {} messages as read", marked);
+        return ContactMessageDto.BulkResponse.builder().affected(marked).build();
+    }
+
+    /**
+     * Deletes the messages picked by {@code request} in one statement, queueing their attachments
+     * for removal in one more.
+     */
+    public ContactMessageDto.BulkResponse bulkDelete(ContactMessageDto.BulkRequest request) {
+        LocalDateTime before = bulkCutoff(request);
+        List<ContactMessageRepository.DeletedMessage> deleted = request.getIds() == null
+                ? contactMessageRepository.deleteBefore(before)
+                : contactMessageRepository.deleteByIds(request.getIds().toArray(UUID[]::new), before);
+
+        fileDeletionService.enqueueAll(deleted.stream()
+                .map(ContactMessageRepository.DeletedMessage::getAttachmentUrl)
+                .filter(Objects::nonNull)
+                .toList());
+        long unread = deleted.stream().filter(ContactMessageRepository.DeletedMessage::isUnread).count();
+        if (unread > 0) {
+            eventPublisher.publishEvent(new UnreadCountChangedEvent(-unread));
+        }
+        log.info("Deleted {} messages", deleted.size());
+        return ContactMessageDto.BulkResponse.builder().affected(deleted.size()).build();
+    }
+
+    // Without olderThan, every listed id qualifies
+    private static LocalDateTime bulkCutoff(ContactMessageDto.BulkRequest request) {
+        if (request.getIds() == null && request.getOlderThan() == null) {
+            throw new IllegalArgumentException("Give ids, olderThan or both");
+        }
+        return request.getOlderThan() == null ? PageCursor.END_OF_TIME : request.getOlderThan();
     }
 
     @Transactional(readOnly = true)
@@ -76,28 +153,27 @@ public class ContactService {
     }
 
     public void markAsRead(UUID id) {
-        ContactMessage message = contactMessageRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + id));
-        message.setIsRead(true);
-        contactMessageRepository.save(message);
-        log.info("Marked message as read: {}", id);
+        if (contactMessageRepository.markRead(id) > 0) {
+            eventPublisher.publishEvent(new UnreadCountChangedEvent(-1));
+            log.info("Marked message as read: {}", id);
+        } else if (!contactMessageRepository.existsById(id)) {
+            throw new ResourceNotFoundException("Message not found with id: " + id);
+        }
     }
 
     public void deleteMessage(UUID id) {
-        ContactMessage message = contactMessageRepository.findById(id)
+        ContactMessage message = contactMessageRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + id));
 
-        // Delete attachment if exists
+        // Delete attachment if exists, once the row is gone for good
         if (message.getAttachmentUrl() != null) {
-            fileStorageService.deleteFile(message.getAttachmentUrl());
+            fileDeletionService.enqueue(message.getAttachmentUrl());
         }
 
         contactMessageRepository.delete(message);
+        if (Boolean.FALSE.equals(message.getIsRead())) {
+            eventPublisher.publishEvent(new UnreadCountChangedEvent(-1));
+        }
         log.info("Deleted message: {}", id);
     }
-
-    @Transactional(readOnly = true)
-    public long getUnreadCount() {
-        return contactMessageRepository.countByIsReadFalse();
-    }
 }
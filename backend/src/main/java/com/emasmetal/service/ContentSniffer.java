@@ -0,0 +1,100 @@
+package com.emasmetal.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Recognises the allowed upload formats from their first bytes, so a file whose content does not
+ * match its extension is turned away before the rest of it is received.
+ */
+final class ContentSniffer {
+
+    /** Bytes looked at; every signature below sits well inside this. */
+    static final int HEAD_BYTES = 8192;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+    private static final byte[] PDF = ascii("%PDF-");
+    private static final byte[] RIFF = ascii("RIFF");
+    private static final byte[] WEBP = ascii("WEBP");
+    private static final byte[] BINARY_DXF = ascii("AutoCAD Binary DXF\r\n\u001a\0");
+    private static final byte[] STEP = ascii("ISO-10303-21;");
+    private static final byte[] UTF8_BOM = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+    // Readers accept a PDF header anywhere in the first KB
+    private static final int PDF_HEADER_WINDOW = 1024;
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * @return whether {@code head}, the first bytes of a file, look like {@code extension};
+     *         extensions without a known signature always match
+     */
+    static boolean matches(String extension, byte[] head) {
+        return switch (extension.toLowerCase(Locale.ROOT)) {
+            case "png" -> startsWith(head, 0, PNG);
+            case "jpg", "jpeg" -> startsWith(head, 0, JPEG);
+            case "webp" -> startsWith(head, 0, RIFF) && startsWith(head, 8, WEBP);
+            case "pdf" -> indexOf(head, PDF, PDF_HEADER_WINDOW) >= 0;
+            case "dwg" -> isDwg(head);
+            case "dxf" -> startsWith(head, 0, BINARY_DXF) || isAsciiDxf(head);
+            case "step", "stp" -> startsWith(head, textStart(head), STEP);
+            default -> true;
+        };
+    }
+
+    // "AC1015" (AutoCAD 2000), "AC1032" (2018), ...
+    private static boolean isDwg(byte[] head) {
+        if (head.length < 6 || head[0] != 'A' || head[1] != 'C') {
+            return false;
+        }
+        for (int i = 2; i < 6; i++) {
+            if (head[i] < '0' || head[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Group code / value pairs, one per line, starting with "0" "SECTION" after optional 999 comments
+    private static boolean isAsciiDxf(byte[] head) {
+        for (byte b : head) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        String text = new String(head, textStart(head), head.length - textStart(head), StandardCharsets.ISO_8859_1);
+        String[] lines = text.split("\r?\n", 3);
+        return lines.length >= 2 && lines[0].trim().matches("\\d{1,4}")
+                && text.toUpperCase(Locale.ROOT).contains("SECTION");
+    }
+
+    // Past a UTF-8 byte order mark and leading whitespace
+    private static int textStart(byte[] head) {
+        int start = startsWith(head, 0, UTF8_BOM) ? UTF8_BOM.length : 0;
+        while (start < head.length && Character.isWhitespace(head[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean startsWith(byte[] head, int offset, byte[] signature) {
+        return head.length >= offset + signature.length
+                && Arrays.equals(head, offset, offset + signature.length, signature, 0, signature.length);
+    }
+
+    private static int indexOf(byte[] head, byte[] signature, int window) {
+        int last = Math.min(head.length, window) - signature.length;
+        for (int i = 0; i <= last; i++) {
+            if (startsWith(head, i, signature)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
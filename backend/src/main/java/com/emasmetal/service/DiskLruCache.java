@@ -0,0 +1,345 @@
+package com.emasmetal.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded LRU cache of files on local disk. The recency index lives in memory and is
+ * rebuilt from file modification times on startup; entries are evicted oldest-first once the
+ * byte budget is exceeded. Concurrent misses for the same key share a single computation.
+ *
+ * <p>Entries held through a {@link Lease} are never evicted, and neither is the entry a caller
+ * has just computed, so a freshly returned path exists at least until the next insert.
+ *
+ * <p>{@link #monitor} publishes hits, misses, evictions and size as the {@code cache.*} meters,
+ * the same ones the in-memory caches report.
+ */
+@Slf4j
+public class DiskLruCache {
+
+    @FunctionalInterface
+    public interface Loader {
+        void write(Path target) throws IOException;
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    // Open leases by file name
+    private final Map<String, Integer> pins = new HashMap<>();
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DiskLruCache(Path directory, long maxBytes) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+    }
+
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+
+        record CachedFile(String name, long size, FileTime lastModified) {}
+        List<CachedFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                String name = path.getFileName().toString();
+                try {
+                    if (name.startsWith(".")) {
+                        // Leftover from a write interrupted by a shutdown
+                        Files.deleteIfExists(path);
+                        return;
+                    }
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    files.add(new CachedFile(name, attributes.size(), attributes.lastModifiedTime()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        files.sort((a, b) -> a.lastModified().compareTo(b.lastModified()));
+        synchronized (this) {
+            files.forEach(file -> {
+                entries.put(file.name(), file.size());
+                totalBytes += file.size();
+            });
+        }
+        evictIfNeeded(null);
+        log.info("Disk cache at {} holds {} entries ({} bytes, budget {} bytes)",
+                directory, entries.size(), totalBytes, maxBytes);
+    }
+
+    public Path get(String key) {
+        String name = fileName(key);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+        Path path = pathFor(name);
+        if (!Files.exists(path)) {
+            forget(name);
+            return null;
+        }
+        touch(path);
+        return path;
+    }
+
+    /**
+     * Returns the cached file for {@code key}, running {@code loader} on a miss. Callers that miss
+     * on a key which is already being computed wait for that computation instead of starting their own.
+     */
+    public Path getOrCompute(String key, Loader loader) throws IOException {
+        Path cached = get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            hits.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            // Another caller may have finished between the lookup and claiming the key
+            cached = get(key);
+            if (cached == null) {
+                misses.incrementAndGet();
+                cached = compute(key, loader);
+            }
+            future.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * A cached file that is not evicted while the lease is open. Readers should open the file
+     * before closing the lease; an open file stays readable after eviction has deleted it.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final String name;
+        private final Path path;
+        private boolean closed;
+
+        private Lease(String name, Path path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unpin(name);
+            }
+        }
+    }
+
+    /**
+     * {@link #getOrCompute} with the entry pinned until the returned lease is closed.
+     */
+    public Lease acquire(String key, Loader loader) throws IOException {
+        String name = fileName(key);
+        pin(name);
+        try {
+            return new Lease(name, getOrCompute(key, loader));
+        } catch (IOException | RuntimeException e) {
+            unpin(name);
+            throw e;
+        }
+    }
+
+    public void remove(String key) {
+        String name = fileName(key);
+        forget(name);
+        try {
+            Files.deleteIfExists(pathFor(name));
+        } catch (IOException e) {
+            log.warn("Could not remove cache entry {}", name, e);
+        }
+    }
+
+    /**
+     * Registers the cache's meters, tagged with {@code cache=name}.
+     */
+    public void monitor(MeterRegistry registry, String name) {
+        FunctionCounter.builder("cache.gets", this, DiskLruCache::hitCount)
+                .tags("cache", name, "result", "hit")
+                .description("Cache lookups")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, DiskLruCache::missCount)
+                .tags("cache", name, "result", "miss")
+                .description("Cache lookups")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, DiskLruCache::evictionCount)
+                .tag("cache", name)
+                .description("Entries deleted to stay within the byte budget")
+                .register(registry);
+        Gauge.builder("cache.size", this, DiskLruCache::entryCount)
+                .tag("cache", name)
+                .description("Entries on disk")
+                .register(registry);
+        Gauge.builder("cache.disk.size", this, DiskLruCache::sizeInBytes)
+                .tag("cache", name)
+                .baseUnit("bytes")
+                .description("Bytes on disk")
+                .register(registry);
+    }
+
+    public synchronized long sizeInBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    private Path compute(String key, Loader loader) throws IOException {
+        String name = fileName(key);
+        Path target = pathFor(name);
+        Files.createDirectories(target.getParent());
+
+        Path temp = Files.createTempFile(target.getParent(), ".", ".tmp");
+        try {
+            loader.write(temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        long size = Files.size(target);
+        synchronized (this) {
+            Long previous = entries.put(name, size);
+            totalBytes += size - (previous != null ? previous : 0);
+        }
+        evictIfNeeded(name);
+        return target;
+    }
+
+    // Files are deleted under the lock, so a name cannot be picked for eviction, then pinned and
+    // written again, and only then deleted
+    private synchronized void evictIfNeeded(String justAdded) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            String name = eldest.getKey();
+            if (name.equals(justAdded) || pins.containsKey(name)) {
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            try {
+                Files.deleteIfExists(pathFor(name));
+                evictions.incrementAndGet();
+            } catch (IOException e) {
+                log.warn("Could not evict cache entry {}", name, e);
+            }
+        }
+    }
+
+    private synchronized void pin(String name) {
+        pins.merge(name, 1, Integer::sum);
+    }
+
+    private synchronized void unpin(String name) {
+        pins.computeIfPresent(name, (ignored, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private synchronized void forget(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private void touch(Path path) {
+        // Keeps the on-disk order in line with the in-memory one across restarts
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Could not touch cache entry {}", path, e);
+        }
+    }
+
+    private Path pathFor(String name) {
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+}
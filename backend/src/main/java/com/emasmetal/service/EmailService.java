@@ -1,20 +1,23 @@
 package com.emasmetal.service;
 
 import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.storage.ContentCoding;
+import com.emasmetal.storage.StoredObject;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.UncheckedIOException;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -22,6 +25,7 @@ import java.nio.file.Paths;
 public class EmailService {
 
     private final JavaMailSender mailSender;
+    private final FileStorageService fileStorageService;
 
     @Value("${app.mail.to:info@emasmetal.com.tr}")
     private String toEmail;
@@ -32,8 +36,8 @@ public class EmailService {
     @Value("${app.mail.enabled:true}")
     private boolean mailEnabled;
 
-    @Value("${app.file.upload-dir:./uploads}")
-    private String uploadDir;
+    @Value("${app.mail.attach-compressed:true}")
+    private boolean attachCompressed;
 
     @Async
     public void sendContactNotification(ContactMessage message) {
@@ -68,25 +72,34 @@ public class EmailService {
     private void attachFile(MimeMessageHelper helper, ContactMessage message) {
         try {
             // attachmentUrl format: /uploads/attachments/filename.ext
-            String relativePath = message.getAttachmentUrl();
-            if (relativePath.startsWith("/uploads/")) {
-                relativePath = relativePath.substring("/uploads/".length());
-            }
-
-            Path filePath = Paths.get(uploadDir, relativePath);
-            File file = filePath.toFile();
+            String attachmentUrl = message.getAttachmentUrl();
 
-            if (file.exists() && file.isFile()) {
-                FileSystemResource resource = new FileSystemResource(file);
+            Optional<StoredObject> file = fileStorageService.stat(attachmentUrl);
+            if (file.isPresent()) {
                 String filename = message.getAttachmentFilename() != null
                     ? message.getAttachmentFilename()
-                    : file.getName();
-                helper.addAttachment(filename, resource);
+                    : attachmentUrl.substring(attachmentUrl.lastIndexOf('/') + 1);
+                String storageKey = file.get().key();
+                Optional<ContentCoding> coding = ContentCoding.ofKey(storageKey);
+                // Opened afresh from storage each time the message is written out
+                InputStreamSource source;
+                String contentType;
+                if (coding.isPresent() && attachCompressed) {
+                    // Sent as stored, e.g. drawing.dxf.gz: a fraction of the size, and any archiver opens it
+                    filename = filename + coding.get().suffix();
+                    source = () -> fileStorageService.open(storageKey, 0, -1);
+                    contentType = coding.get().mediaType();
+                } else {
+                    source = () -> fileStorageService.openContent(storageKey);
+                    contentType = MediaTypeFactory.getMediaType(filename)
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+                }
+                helper.addAttachment(filename, source, contentType);
                 log.info("Attached file: {} to email", filename);
             } else {
-                log.warn("Attachment file not found: {}", filePath);
+                log.warn("Attachment file not found: {}", attachmentUrl);
             }
-        } catch (MessagingException e) {
+        } catch (MessagingException | UncheckedIOException e) {
             log.error("Failed to attach file to email", e);
         }
     }
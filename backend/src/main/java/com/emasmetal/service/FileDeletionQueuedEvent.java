@@ -0,0 +1,7 @@
+package com.emasmetal.service;
+
+/**
+ * Published when a transaction queues {@code count} file deletions; the worker starts on them
+ * after commit.
+ */
+public record FileDeletionQueuedEvent(int count) {}
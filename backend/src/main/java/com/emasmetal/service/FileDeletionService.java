@@ -0,0 +1,217 @@
+package com.emasmetal.service;
+
+import com.emasmetal.entity.FileDeletion;
+import com.emasmetal.entity.UuidV7Generator;
+import com.emasmetal.repository.FileDeletionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox for file deletions. Services queue the files a transaction stops referencing; the rows
+ * commit or roll back with it, and a worker releases the references after commit, in batches,
+ * retrying failures with a growing delay. Files are removed from storage only once their release
+ * has committed. No request holds a connection while storage is being touched, and a rolled-back
+ * delete leaves its files in place.
+ *
+ * <p>Replicas share the queue: a batch is claimed with {@code FOR UPDATE SKIP LOCKED} and leased
+ * for a while, so the others pass over it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileDeletionService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final FileDeletionRepository fileDeletionRepository;
+    private final FileStorageService fileStorageService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Qualifier("fileDeletionExecutor")
+    private final TaskExecutor fileDeletionExecutor;
+
+    @Value("${file.deletion.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.deletion.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${file.deletion.retry-delay:PT1M}")
+    private Duration retryDelay;
+
+    @Value("${file.deletion.max-retry-delay:PT6H}")
+    private Duration maxRetryDelay;
+
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("file.deletion.queue", queueDepth, AtomicLong::get)
+                .description("Files waiting to be removed from storage")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues {@code fileUrl} for deletion once the current transaction commits. The derived files
+     * are removed along with it, but only if the file itself is: a content-addressed original may
+     * still be shared with another row.
+     */
+    public void enqueue(String fileUrl, Collection<String> derivedUrls) {
+        fileDeletionRepository.save(FileDeletion.builder()
+                .fileUrl(fileUrl)
+                .derivedUrls(derivedUrls.isEmpty() ? null : List.copyOf(derivedUrls))
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .build());
+        eventPublisher.publishEvent(new FileDeletionQueuedEvent(1));
+    }
+
+    public void enqueue(String fileUrl) {
+        enqueue(fileUrl, List.of());
+    }
+
+    /**
+     * {@link #enqueue(String)} for many files, as a single insert.
+     */
+    public void enqueueAll(Collection<String> fileUrls) {
+        if (fileUrls.isEmpty()) {
+            return;
+        }
+        UUID[] ids = fileUrls.stream().map(url -> UuidV7Generator.next()).toArray(UUID[]::new);
+        fileDeletionRepository.insertAll(ids, fileUrls.toArray(String[]::new), LocalDateTime.now());
+        eventPublisher.publishEvent(new FileDeletionQueuedEvent(ids.length));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onFileDeletionQueued(FileDeletionQueuedEvent event) {
+        queueDepth.addAndGet(event.count());
+        requestDrain();
+    }
+
+    // Picks up retries, and whatever another replica queued or left behind
+    @Scheduled(fixedDelayString = "${file.deletion.poll-interval:PT1M}", initialDelayString = "PT10S")
+    public void scheduledDrain() {
+        requestDrain();
+    }
+
+    private void requestDrain() {
+        drainRequested.set(true);
+        if (draining.compareAndSet(false, true)) {
+            fileDeletionExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (drainRequested.getAndSet(false)) {
+                while (processBatch() == batchSize) {
+                    // keep going while full batches come back
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("File deletion worker failed", e);
+        } finally {
+            draining.set(false);
+        }
+        // A request that arrived after the last check but before the flag was cleared
+        if (drainRequested.get()) {
+            requestDrain();
+        }
+    }
+
+    private int processBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<FileDeletion> batch = transactionTemplate.execute(status -> {
+            List<FileDeletion> due = fileDeletionRepository.lockDue(now, batchSize);
+            if (!due.isEmpty()) {
+                fileDeletionRepository.lease(due.stream().map(FileDeletion::getId).toList(), now.plus(lease));
+            }
+            return due;
+        });
+        if (batch == null || batch.isEmpty()) {
+            queueDepth.set(fileDeletionRepository.count());
+            return 0;
+        }
+
+        int deleted = 0;
+        for (FileDeletion deletion : batch) {
+            if (process(deletion)) {
+                deleted++;
+            }
+        }
+        log.info("Processed {} queued file deletions ({} failed)", batch.size(), batch.size() - deleted);
+        queueDepth.set(fileDeletionRepository.count());
+        return batch.size();
+    }
+
+    private boolean process(FileDeletion deletion) {
+        List<String> released;
+        try {
+            // The reference count and the queue row change together; a failure rolls both back
+            released = transactionTemplate.execute(status -> {
+                List<String> keys = new ArrayList<>();
+                fileStorageService.releaseFile(deletion.getFileUrl()).ifPresent(key -> {
+                    keys.add(key);
+                    if (deletion.getDerivedUrls() != null) {
+                        deletion.getDerivedUrls().forEach(derivedUrl ->
+                                fileStorageService.releaseFile(derivedUrl).ifPresent(keys::add));
+                    }
+                });
+                fileDeletionRepository.remove(deletion.getId());
+                return keys;
+            });
+        } catch (RuntimeException e) {
+            int attempt = deletion.getAttempts() + 1;
+            Duration delay = backoff(attempt);
+            log.warn("Could not delete {} (attempt {}), retrying in {}", deletion.getFileUrl(), attempt, delay, e);
+            String error = String.valueOf(e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> fileDeletionRepository.reschedule(deletion.getId(),
+                    LocalDateTime.now().plus(delay),
+                    error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error));
+            return false;
+        }
+
+        // Storage is only touched once the release has committed: a file that cannot be removed
+        // now is an orphan the reconciler clears up, whereas one removed before a failed commit
+        // would be lost while still referenced
+        for (String storageKey : released) {
+            try {
+                fileStorageService.removeIfUnreferenced(storageKey);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not delete {}, leaving it to the orphan reconciler", storageKey, e);
+            }
+        }
+        return true;
+    }
+
+    private Duration backoff(int attempt) {
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempt - 1, 20));
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
+    }
+}
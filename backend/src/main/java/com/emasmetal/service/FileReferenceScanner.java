@@ -0,0 +1,75 @@
+package com.emasmetal.service;
+
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.repository.FileReference;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.emasmetal.repository.ResumableUploadRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Streams every upload URL the database points at, one table after another, without loading
+ * entities. Used by the storage maintenance jobs.
+ */
+@Service
+@RequiredArgsConstructor
+public class FileReferenceScanner {
+
+    private static final String UPLOADS_PREFIX = "/uploads/";
+
+    public record ReferencedUrl(String table, UUID id, String url) {}
+
+    private final GalleryItemRepository galleryItemRepository;
+    private final ReferenceRepository referenceRepository;
+    private final ContactMessageRepository contactMessageRepository;
+    private final ResumableUploadRepository resumableUploadRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    public void init() {
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void forEachReference(Consumer<ReferencedUrl> consumer) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<GalleryItemRepository.FileReferences> items = galleryItemRepository.streamFileReferences()) {
+                items.forEach(item -> {
+                    accept(consumer, "gallery_items", item.getId(), item.getImageUrl());
+                    accept(consumer, "gallery_items", item.getId(), item.getThumbnailUrl());
+                    if (item.getImageVariants() != null) {
+                        item.getImageVariants().values()
+                                .forEach(url -> accept(consumer, "gallery_items", item.getId(), url));
+                    }
+                });
+            }
+            try (Stream<FileReference> logos = referenceRepository.streamLogoUrls()) {
+                logos.forEach(row -> accept(consumer, "company_references", row.getId(), row.getUrl()));
+            }
+            try (Stream<FileReference> attachments = contactMessageRepository.streamAttachmentUrls()) {
+                attachments.forEach(row -> accept(consumer, "contact_messages", row.getId(), row.getUrl()));
+            }
+            // Finished resumable uploads hold their file until a contact message claims it
+            try (Stream<FileReference> uploads = resumableUploadRepository.streamStoredUrls()) {
+                uploads.forEach(row -> accept(consumer, "resumable_uploads", row.getId(), row.getUrl()));
+            }
+        });
+    }
+
+    private static void accept(Consumer<ReferencedUrl> consumer, String table, UUID id, String url) {
+        // Seeded paths such as /images/... are served by the frontend, not from the upload directory
+        if (url != null && url.startsWith(UPLOADS_PREFIX)) {
+            consumer.accept(new ReferencedUrl(table, id, url));
+        }
+    }
+}
@@ -1,27 +1,72 @@
 package com.emasmetal.service;
 
 import com.emasmetal.exception.FileStorageException;
+import com.emasmetal.exception.ResourceNotFoundException;
+import com.emasmetal.repository.StoredFileRepository;
+import com.emasmetal.storage.ContentCoding;
+import com.emasmetal.storage.MultiVolumeStorageBackend;
+import com.emasmetal.storage.StorageBackend;
+import com.emasmetal.storage.StoredObject;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class FileStorageService {
     
+    // Advisory lock namespace ("file") in the high half of the key, see lock(String)
+    private static final long LOCK_NAMESPACE = 0x66696c65L << 32;
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+    private static final String STAGING_DIRECTORY = ".staging";
+    private static final String QUARANTINE_DIRECTORY = ".quarantine/";
+    
+    // <sha256>.<ext> for content-addressed files, <uuid>.<ext> for older uploads, plus "_w<width>" variants
+    private static final Pattern FINGERPRINTED_NAME = Pattern.compile(
+            "^([0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})(_w\\d+)?\\.[a-z0-9]+$");
+    private static final Pattern HEX_PREFIX = Pattern.compile("^[0-9a-f]{4}");
+    
+    private final StoredFileRepository storedFileRepository;
+    private final StorageBackend storageBackend;
+    
     @Value("${file.upload-dir}")
     private String uploadDir;
     
@@ -31,107 +76,675 @@ public class FileStorageService {
     @Value("${file.max-size-mb}")
     private int maxSizeMb;
     
+    @Value("${file.allowed-contact-extensions}")
+    private String allowedContactExtensionsStr;
+    
+    @Value("${file.max-contact-size}")
+    private long maxContactSize;
+    
+    @Value("${file.allowed-gallery-extensions}")
+    private String allowedGalleryExtensionsStr;
+    
+    @Value("${file.max-gallery-size}")
+    private long maxGallerySize;
+    
+    @Value("${file.compression.policy:dxf=gzip,step=zstd,stp=zstd}")
+    private String compressionPolicyStr;
+    
     private Path uploadPath;
-    private List<String> allowedExtensions;
+    private UploadLimits defaultLimits;
+    private UploadLimits contactLimits;
+    private UploadLimits galleryLimits;
+    // Extension to the coding new files are stored with; empty for "identity"
+    private Map<String, Optional<ContentCoding>> compressionPolicy;
     
     @PostConstruct
     public void init() {
         this.uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
-        this.allowedExtensions = Arrays.asList(allowedExtensionsStr.toLowerCase().split(","));
+        this.defaultLimits = new UploadLimits(parseExtensions(allowedExtensionsStr), (long) maxSizeMb * 1024 * 1024);
+        this.contactLimits = new UploadLimits(parseExtensions(allowedContactExtensionsStr), maxContactSize);
+        this.galleryLimits = new UploadLimits(parseExtensions(allowedGalleryExtensionsStr), maxGallerySize);
+        this.compressionPolicy = parseCompressionPolicy(compressionPolicyStr);
         
         try {
-            Files.createDirectories(uploadPath);
-            Files.createDirectories(uploadPath.resolve("gallery"));
-            Files.createDirectories(uploadPath.resolve("logos"));
-            Files.createDirectories(uploadPath.resolve("attachments"));
-            log.info("Created upload directories at: {}", uploadPath);
+            Files.createDirectories(uploadPath.resolve(STAGING_DIRECTORY));
+            log.info("Created staging directory at: {}", uploadPath.resolve(STAGING_DIRECTORY));
         } catch (IOException e) {
-            throw new FileStorageException("Could not create upload directories", e);
+            throw new FileStorageException("Could not create staging directory", e);
         }
     }
     
-    public String storeFile(MultipartFile file, String subDirectory) {
-        validateFile(file);
+    /**
+     * Streams an upload into a temporary file in the staging directory, checking the name and the
+     * leading bytes before the first byte is written and the size as bytes arrive. The SHA-256
+     * digest is computed on the way through, so {@link #promote} can store the content under its
+     * digest without reading it again.
+     */
+    public StagedFile stage(InputStream inputStream, String originalFilename, String contentType, String subDirectory) {
+        UploadLimits limits = limitsFor(subDirectory);
+        String filename = validateFilename(originalFilename, limits);
+        String extension = getFileExtension(filename).toLowerCase();
         
-        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-        String extension = getFileExtension(originalFilename);
-        String uniqueFilename = UUID.randomUUID().toString() + "." + extension;
+        // Validate MIME type
+        if (contentType != null) {
+            validateMimeType(contentType, extension);
+        }
         
+        Path tempFile = null;
         try {
-            // Security check: prevent path traversal
-            if (originalFilename.contains("..")) {
-                throw new FileStorageException("Filename contains invalid path sequence: " + originalFilename);
+            MessageDigest digest = sha256();
+            
+            // Deliberately not closed: closing a multipart item stream drains the rest of the part,
+            // which would defeat aborting early on an oversized or mislabelled upload
+            InputStream source = new DigestInputStream(new SizeLimitedInputStream(inputStream, limits), digest);
+            byte[] head = source.readNBytes(ContentSniffer.HEAD_BYTES);
+            verifyContent(filename, head);
+            
+            tempFile = Files.createTempFile(getStagingDirectory(), ".upload-", ".tmp");
+            long size = head.length;
+            try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                target.write(ByteBuffer.wrap(head));
+                ReadableByteChannel rest = Channels.newChannel(source);
+                long transferred;
+                while ((transferred = target.transferFrom(rest, size, TRANSFER_CHUNK_BYTES)) > 0) {
+                    size += transferred;
+                }
             }
             
-            Path targetDir = uploadPath.resolve(subDirectory);
-            Files.createDirectories(targetDir);
+            return new StagedFile(tempFile, subDirectory, filename, extension,
+                    HexFormat.of().formatHex(digest.digest()), size);
             
-            Path targetLocation = targetDir.resolve(uniqueFilename);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(tempFile);
+            if (e instanceof FileStorageException storageException) {
+                throw storageException;
+            }
+            throw new FileStorageException("Could not store file " + filename, e);
+        }
+    }
+    
+    /**
+     * Checks an upload's name and declared size against the limits for its category before any
+     * of it is received.
+     *
+     * @return the cleaned filename
+     */
+    public String checkUpload(String originalFilename, long sizeBytes, String subDirectory) {
+        UploadLimits limits = limitsFor(subDirectory);
+        String filename = validateFilename(originalFilename, limits);
+        if (sizeBytes > limits.maxBytes()) {
+            throw new FileStorageException("File size exceeds maximum allowed size of "
+                    + (limits.maxBytes() / (1024 * 1024)) + "MB");
+        }
+        return filename;
+    }
+    
+    /**
+     * Checks the first bytes of an upload against the format its extension promises.
+     *
+     * @param head up to {@link ContentSniffer#HEAD_BYTES} leading bytes; fewer only if that is the whole file
+     */
+    public void verifyContent(String filename, byte[] head) {
+        String extension = getFileExtension(filename);
+        if (!ContentSniffer.matches(extension, head)) {
+            log.warn("Rejected upload {}: content is not {}", filename, extension);
+            throw new FileStorageException("File content does not match its ." + extension.toLowerCase() + " extension");
+        }
+    }
+    
+    /**
+     * Local directory for uploads that are still being received or checked. It sits inside the
+     * upload directory so that the file system backend moves finished files into place with a rename.
+     */
+    public Path getStagingDirectory() {
+        return uploadPath.resolve(STAGING_DIRECTORY);
+    }
+    
+    /**
+     * Stages a file that has already been written to the staging directory, checking its leading
+     * bytes and hashing it in place.
+     */
+    public StagedFile adopt(Path file, String originalFilename, String subDirectory) {
+        UploadLimits limits = limitsFor(subDirectory);
+        String filename = validateFilename(originalFilename, limits);
+        String extension = getFileExtension(filename).toLowerCase();
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > limits.maxBytes()) {
+                throw new FileStorageException("File size exceeds maximum allowed size of "
+                        + (limits.maxBytes() / (1024 * 1024)) + "MB");
+            }
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, ContentSniffer.HEAD_BYTES));
+            channel.read(head, 0);
+            verifyContent(filename, Arrays.copyOf(head.array(), head.position()));
             
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            MessageDigest digest = sha256();
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) TRANSFER_CHUNK_BYTES);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
             }
             
-            log.info("Stored file: {} -> {}", originalFilename, targetLocation);
+            return new StagedFile(file, subDirectory, filename, extension,
+                    HexFormat.of().formatHex(digest.digest()), size);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read file " + filename, e);
+        }
+    }
+    
+    /**
+     * Stores a staged upload as {@code <subDirectory>/<ab>/<cd>/<sha256>.<ext>} and returns its URL.
+     * Identical content is kept once and only its reference count grows. With several volumes the
+     * key, and so the URL, starts with the id of the volume the file was placed on.
+     *
+     * <p>Types named in {@code file.compression.policy} are stored compressed, under the key plus
+     * the coding's suffix; the URL stays that of the plain file.
+     */
+    @Transactional
+    public String promote(StagedFile staged) {
+        String filename = staged.digest() + "." + staged.extension();
+        String key = shardedKey(staged.subDirectory() + "/" + filename);
+        
+        String storageKey;
+        try {
+            lock(key);
+            Optional<String> existing = findStored(key);
+            if (existing.isPresent()) {
+                storageKey = existing.get();
+                staged.discard();
+                log.info("Stored file: {} -> {} (duplicate content, reusing)",
+                        staged.originalFilename(), storageKey);
+            } else {
+                Optional<ContentCoding> coding = codingFor(staged.extension());
+                Path compressed = coding.isPresent() ? compress(staged.tempFile(), coding.get()) : null;
+                try {
+                    Path source = compressed != null ? compressed : staged.tempFile();
+                    storageKey = storageBackend.place(
+                            compressed != null ? key + coding.get().suffix() : key, Files.size(source));
+                    StorageBackend.join(storageBackend.put(storageKey, source));
+                } finally {
+                    deleteQuietly(compressed);
+                }
+                staged.discard();
+                log.info("Stored file: {} -> {}", staged.originalFilename(), storageKey);
+            }
+            // Also marks reused content as freshly stored for the orphan reconciler's grace period
+            storedFileRepository.acquire(storageKey, staged.digest(), staged.size());
             
             // Return relative path for URL generation
-            return "/uploads/" + subDirectory + "/" + uniqueFilename;
+            return "/uploads/" + ContentCoding.plainKey(storageKey);
             
         } catch (IOException e) {
-            throw new FileStorageException("Could not store file " + originalFilename, e);
+            throw new FileStorageException("Could not store file " + staged.originalFilename(), e);
         }
     }
     
-    public void deleteFile(String filePath) {
+    /**
+     * Drops one reference to the file. The file itself is removed only when no other row points
+     * at it; files stored before content addressing carry no reference count and are removed directly.
+     *
+     * @return whether the file was physically removed
+     */
+    @Transactional
+    public boolean deleteFile(String filePath) {
+        try {
+            Optional<String> released = releaseFile(filePath);
+            if (released.isEmpty()) {
+                return false;
+            }
+            StorageBackend.join(storageBackend.delete(released.get()));
+            log.info("Deleted file: {}", released.get());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not delete file: {}", filePath, e);
+            return false;
+        }
+    }
+    
+    /**
+     * Drops one reference to the file but leaves the file itself alone. Run inside a transaction;
+     * once it has committed, the returned key goes to {@link #removeIfUnreferenced}.
+     *
+     * @return the storage key of the file if no row points at it any more
+     */
+    Optional<String> releaseFile(String filePath) {
         if (filePath == null || filePath.isBlank()) {
-            return;
+            return Optional.empty();
         }
         
+        String requestedKey = toStorageKey(filePath);
+        lock(requestedKey);
+        String storageKey = locate(requestedKey);
+        if (storedFileRepository.existsById(storageKey)) {
+            storedFileRepository.release(storageKey);
+            if (storedFileRepository.deleteIfUnreferenced(storageKey) == 0) {
+                log.info("Kept file still referenced elsewhere: {}", storageKey);
+                return Optional.empty();
+            }
+        }
+        return Optional.of(storageKey);
+    }
+    
+    /**
+     * Removes a file released by a committed {@link #releaseFile}, unless the same content has been
+     * stored again in the meantime.
+     *
+     * @return whether the file was physically removed
+     */
+    @Transactional
+    public boolean removeIfUnreferenced(String storageKey) throws IOException {
+        lock(storageKey);
+        if (storedFileRepository.existsById(storageKey)) {
+            log.info("Kept file stored again since it was released: {}", storageKey);
+            return false;
+        }
+        StorageBackend.join(storageBackend.delete(storageKey));
+        log.info("Deleted file: {}", storageKey);
+        return true;
+    }
+    
+    /**
+     * Moves a file stored under the flat layout ({@code <category>/<name>}) to its sharded key,
+     * carrying its reference count along.
+     *
+     * @return the new storage key
+     */
+    @Transactional
+    public String relocate(String storageKey) {
+        String target = shardedKey(storageKey);
+        lock(storageKey);
+        try {
+            // Database first: if the move fails, the transaction rolls the rename back
+            storedFileRepository.moveKey(storageKey, target);
+            if (StorageBackend.join(storageBackend.stat(target)).isPresent()) {
+                // The same content has been stored again under the new layout in the meantime
+                StorageBackend.join(storageBackend.delete(storageKey));
+            } else {
+                StorageBackend.join(storageBackend.move(storageKey, target));
+            }
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Removes a file that the reconciler found no reference to, unless it has been stored or
+     * reused since {@code notModifiedSince}. Quarantined files are moved below {@code .quarantine}
+     * instead of being deleted.
+     */
+    @Transactional
+    public boolean removeOrphan(String storageKey, Instant notModifiedSince, boolean quarantine) {
+        LocalDateTime reusedSince = LocalDateTime.ofInstant(notModifiedSince, ZoneId.systemDefault());
+        lock(storageKey);
         try {
-            // Convert URL path to file path
-            String relativePath = filePath.replace("/uploads/", "");
-            Path targetLocation = uploadPath.resolve(relativePath);
+            Optional<StoredObject> file = StorageBackend.join(storageBackend.stat(storageKey));
+            if (file.isEmpty() || file.get().lastModified().isAfter(notModifiedSince)) {
+                return false;
+            }
+            boolean reused = storedFileRepository.findById(storageKey)
+                    .map(row -> row.getLastAcquiredAt() != null && row.getLastAcquiredAt().isAfter(reusedSince))
+                    .orElse(false);
+            if (reused) {
+                return false;
+            }
             
-            if (Files.exists(targetLocation)) {
-                Files.delete(targetLocation);
-                log.info("Deleted file: {}", targetLocation);
+            storedFileRepository.deleteById(storageKey);
+            if (quarantine) {
+                // Retention is counted from the time of quarantine
+                StorageBackend.join(storageBackend.move(storageKey, QUARANTINE_DIRECTORY + storageKey));
+                log.info("Quarantined unreferenced file: {}", storageKey);
+            } else {
+                StorageBackend.join(storageBackend.delete(storageKey));
+                log.info("Deleted unreferenced file: {}", storageKey);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not remove unreferenced file: {}", storageKey, e);
+            return false;
+        }
+    }
+    
+    /**
+     * Deletes quarantined files older than {@code cutoff}.
+     *
+     * @return the number of files deleted
+     */
+    public long purgeQuarantine(Instant cutoff) {
+        LongAdder purged = new LongAdder();
+        try {
+            StorageBackend.join(storageBackend.list(QUARANTINE_DIRECTORY, file -> {
+                if (file.lastModified().isBefore(cutoff)) {
+                    try {
+                        StorageBackend.join(storageBackend.delete(file.key()));
+                        purged.increment();
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Could not purge quarantined file {}", file.key(), e);
+                    }
+                }
+            }));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not list quarantined files", e);
+        }
+        return purged.sum();
+    }
+    
+    /**
+     * Lists the stored files below a category directory; {@code consumer} may be called
+     * from several threads at once.
+     */
+    public CompletableFuture<Void> listFiles(String subDirectory, Consumer<StoredObject> consumer) {
+        return storageBackend.list(subDirectory + "/", consumer);
+    }
+    
+    /**
+     * Looks up the file behind a URL. The returned key is the one it is actually stored under,
+     * which for a compressed file ends in the coding's suffix.
+     */
+    public Optional<StoredObject> stat(String filePath) {
+        try {
+            for (String candidate : candidateKeys(toStorageKey(filePath))) {
+                Optional<StoredObject> file = StorageBackend.join(storageBackend.stat(candidate));
+                if (file.isPresent()) {
+                    return file;
+                }
             }
+            return Optional.empty();
         } catch (IOException e) {
-            log.error("Could not delete file: {}", filePath, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    public boolean exists(String filePath) {
+        return stat(filePath).isPresent();
+    }
+    
+    /**
+     * Looks up a path requested under {@code /uploads/} that may be served publicly.
+     * Hidden entries (staging directory, quarantine, temp files) and dot segments are reported as missing.
+     */
+    public StoredObject statPublicFile(String relativePath) {
+        for (String segment : relativePath.split("/")) {
+            if (segment.isEmpty() || segment.startsWith(".")) {
+                throw new ResourceNotFoundException("File not found: " + relativePath);
+            }
+        }
+        return stat(relativePath)
+                .orElseThrow(() -> new ResourceNotFoundException("File not found: " + relativePath));
+    }
+    
+    /**
+     * A file on this machine holding the stored file, if the backend keeps one here.
+     */
+    public Optional<Path> localFile(String filePath) {
+        try {
+            return StorageBackend.join(storageBackend.localFile(locate(filePath)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
     
-    public Path getFilePath(String relativePath) {
-        String cleanPath = relativePath.replace("/uploads/", "");
-        return uploadPath.resolve(cleanPath);
+    /**
+     * Streams part of a stored file as stored, compressed or not; a negative {@code length} reads
+     * to the end.
+     */
+    public InputStream open(String filePath, long offset, long length) throws IOException {
+        return StorageBackend.join(storageBackend.get(locate(filePath), offset, length));
+    }
+    
+    /**
+     * Streams a whole stored file as it was uploaded, decompressing it on the way if needed.
+     */
+    public InputStream openContent(String filePath) throws IOException {
+        String storageKey = locate(filePath);
+        InputStream in = StorageBackend.join(storageBackend.get(storageKey, 0, -1));
+        Optional<ContentCoding> coding = ContentCoding.ofKey(storageKey);
+        try {
+            return coding.isPresent() ? coding.get().decode(in) : in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
     }
     
-    private void validateFile(MultipartFile file) {
-        if (file == null || file.isEmpty()) {
-            throw new FileStorageException("Cannot store empty file");
+    /**
+     * Runs {@code reader} against a local copy of a stored file, downloading it to the staging
+     * directory for the duration of the call when the backend keeps no copy on this machine.
+     */
+    public <T> T withLocalFile(String filePath, LocalFileReader<T> reader) throws IOException {
+        Optional<Path> local = localFile(filePath);
+        if (local.isPresent()) {
+            return reader.read(local.get());
         }
         
-        String originalFilename = file.getOriginalFilename();
+        Path temp = Files.createTempFile(getStagingDirectory(), ".download-", ".tmp");
+        try {
+            try (InputStream in = open(filePath, 0, -1)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return reader.read(temp);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+    
+    /**
+     * Stores a file generated from another one (an image variant, say) under {@code filePath}.
+     * Derived files carry no reference count; they are removed together with their original.
+     * They always go to the sharded layout, where a flat {@code filePath} still resolves.
+     */
+    public void storeDerived(String filePath, LocalFileWriter writer) throws IOException {
+        Path temp = Files.createTempFile(getStagingDirectory(), ".derived-", ".tmp");
+        try {
+            writer.write(temp);
+            StorageBackend.join(storageBackend.put(shardedKey(toStorageKey(filePath)), temp));
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+    
+    /**
+     * Whether a stored file's name is unique to its content. Such files are never rewritten under
+     * the same name, so their URLs can be cached indefinitely.
+     */
+    public static boolean isFingerprinted(String path) {
+        String filename = path.substring(path.lastIndexOf('/') + 1);
+        return FINGERPRINTED_NAME.matcher(filename.toLowerCase()).matches();
+    }
+    
+    static String toStorageKey(String filePath) {
+        String key = filePath.startsWith("/uploads/") ? filePath.substring("/uploads/".length()) : filePath;
+        // Never let a URL resolve outside the upload directory
+        return key.replaceFirst("^/+", "");
+    }
+    
+    /**
+     * The upload category ({@code gallery}, {@code logos}, ...) of a key, past any volume id.
+     */
+    static String categoryOf(String storageKey) {
+        String[] segments = storageKey.split("/", 3);
+        return segments.length > 1 && MultiVolumeStorageBackend.isVolumeId(segments[0]) ? segments[1] : segments[0];
+    }
+    
+    /**
+     * {@code <category>/<name>}, as stored before files were spread over shard directories.
+     */
+    static boolean isFlatKey(String storageKey) {
+        int slash = storageKey.indexOf('/');
+        return slash > 0 && storageKey.indexOf('/', slash + 1) < 0;
+    }
+    
+    /**
+     * {@code gallery/<name>} becomes {@code gallery/ab/cd/<name>}, where {@code abcd} are the first
+     * four hex digits of the name (digest and UUID names) or of its SHA-256. Keeps every directory
+     * at no more than 256 entries for the first 16M files of a category. Keys that are not flat are
+     * returned as they are.
+     */
+    static String shardedKey(String storageKey) {
+        if (!isFlatKey(storageKey)) {
+            return storageKey;
+        }
+        int slash = storageKey.indexOf('/');
+        String name = storageKey.substring(slash + 1);
+        String shard = HEX_PREFIX.matcher(name).find()
+                ? name
+                : HexFormat.of().formatHex(sha256().digest(name.getBytes(StandardCharsets.UTF_8)));
+        return storageKey.substring(0, slash) + "/" + shard.substring(0, 2) + "/" + shard.substring(2, 4) + "/" + name;
+    }
+    
+    /**
+     * Whether a file is stored under exactly this key, without falling back to the sharded layout.
+     */
+    boolean isStoredAt(String storageKey) {
+        try {
+            return StorageBackend.join(storageBackend.stat(storageKey)).isPresent();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Where a copy of {@code key} is already stored, whichever volume it was placed on and
+     * whether or not it was compressed.
+     */
+    private Optional<String> findStored(String key) throws IOException {
+        for (String placement : storageBackend.placements(key)) {
+            for (String candidate : codedKeys(placement)) {
+                if (StorageBackend.join(storageBackend.stat(candidate)).isPresent()) {
+                    return Optional.of(candidate);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * The key a file is actually stored under: a flat key whose file has been moved resolves to
+     * its sharded key, the plain key of a compressed file to the suffixed one.
+     */
+    private String locate(String filePath) {
+        String key = toStorageKey(filePath);
+        return candidateKeys(key).size() > 1 ? stat(key).map(StoredObject::key).orElse(key) : key;
+    }
+    
+    /**
+     * Every key the file behind {@code key} may be stored under, most likely first.
+     */
+    private List<String> candidateKeys(String key) {
+        List<String> candidates = new ArrayList<>(codedKeys(key));
+        // A URL from before the sharded layout whose file the migration has already moved
+        if (isFlatKey(key)) {
+            candidates.addAll(codedKeys(shardedKey(key)));
+        }
+        return candidates;
+    }
+    
+    /**
+     * {@code key} and, for a type named in the compression policy, its compressed forms: the
+     * configured coding first, then plain and the others, which files stored under an earlier
+     * policy may still use.
+     */
+    private List<String> codedKeys(String key) {
+        int dot = key.lastIndexOf('.');
+        Optional<ContentCoding> preferred = compressionPolicy.get(dot < 0 ? "" : key.substring(dot + 1).toLowerCase());
+        if (preferred == null || ContentCoding.ofKey(key).isPresent()) {
+            return List.of(key);
+        }
+        List<String> keys = new ArrayList<>();
+        preferred.ifPresent(coding -> keys.add(key + coding.suffix()));
+        keys.add(key);
+        for (ContentCoding coding : ContentCoding.values()) {
+            if (preferred.isEmpty() || preferred.get() != coding) {
+                keys.add(key + coding.suffix());
+            }
+        }
+        return keys;
+    }
+    
+    private Optional<ContentCoding> codingFor(String extension) {
+        return compressionPolicy.getOrDefault(extension, Optional.empty());
+    }
+    
+    /**
+     * Compresses a staged file into a new temporary file, or returns null when that does not make
+     * it any smaller.
+     */
+    private Path compress(Path source, ContentCoding coding) throws IOException {
+        Path target = Files.createTempFile(getStagingDirectory(), ".compress-", ".tmp");
+        try {
+            try (OutputStream out = coding.encode(Files.newOutputStream(target))) {
+                Files.copy(source, out);
+            }
+            if (Files.size(target) < Files.size(source)) {
+                return target;
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+        deleteQuietly(target);
+        return null;
+    }
+    
+    /**
+     * Serialises "does the blob exist / adjust its reference count / create or remove it" for a
+     * file, across replicas. The lock is a transaction-scoped advisory lock, so it is held exactly
+     * as long as the {@code stored_files} row locks taken under it. Keyed by file name, so every key
+     * a file may be known under (flat, sharded, on another volume, compressed) shares one lock.
+     */
+    private void lock(String storageKey) {
+        String key = ContentCoding.plainKey(storageKey);
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        storedFileRepository.lock(LOCK_NAMESPACE | (name.hashCode() & 0xffffffffL));
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary file: {}", path, e);
+        }
+    }
+    
+    private String validateFilename(String originalFilename, UploadLimits limits) {
         if (originalFilename == null || originalFilename.isBlank()) {
             throw new FileStorageException("File must have a name");
         }
         
-        String extension = getFileExtension(originalFilename).toLowerCase();
-        if (!allowedExtensions.contains(extension)) {
-            throw new FileStorageException(
-                    "File type not allowed. Allowed types: " + String.join(", ", allowedExtensions));
-        }
+        String filename = StringUtils.cleanPath(originalFilename);
         
-        long maxBytes = (long) maxSizeMb * 1024 * 1024;
-        if (file.getSize() > maxBytes) {
-            throw new FileStorageException("File size exceeds maximum allowed size of " + maxSizeMb + "MB");
+        // Security check: prevent path traversal
+        if (filename.contains("..")) {
+            throw new FileStorageException("Filename contains invalid path sequence: " + filename);
         }
         
-        // Validate MIME type
-        String contentType = file.getContentType();
-        if (contentType != null) {
-            validateMimeType(contentType, extension);
+        String extension = getFileExtension(filename).toLowerCase();
+        if (!limits.extensions().contains(extension)) {
+            throw new FileStorageException(
+                    "File type not allowed. Allowed types: " + String.join(", ", limits.extensions()));
         }
+        return filename;
+    }
+    
+    private UploadLimits limitsFor(String subDirectory) {
+        return switch (subDirectory) {
+            case "attachments" -> contactLimits;
+            case "gallery", "logos" -> galleryLimits;
+            default -> defaultLimits;
+        };
     }
     
     private void validateMimeType(String contentType, String extension) {
@@ -152,6 +765,26 @@ public class FileStorageService {
         }
     }
     
+    private static List<String> parseExtensions(String extensions) {
+        return Arrays.asList(extensions.toLowerCase().split(","));
+    }
+    
+    // "dxf=gzip,step=zstd,stp=identity"
+    private static Map<String, Optional<ContentCoding>> parseCompressionPolicy(String policy) {
+        Map<String, Optional<ContentCoding>> codings = new HashMap<>();
+        for (String entry : policy.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Compression policy entries look like dxf=gzip: " + entry);
+            }
+            codings.put(parts[0].trim().toLowerCase(), ContentCoding.parse(parts[1]));
+        }
+        return codings;
+    }
+    
     private String getFileExtension(String filename) {
         int dotIndex = filename.lastIndexOf('.');
         if (dotIndex < 0 || dotIndex >= filename.length() - 1) {
@@ -159,4 +792,56 @@ public class FileStorageService {
         }
         return filename.substring(dotIndex + 1);
     }
+    
+    @FunctionalInterface
+    public interface LocalFileReader<T> {
+        T read(Path file) throws IOException;
+    }
+    
+    @FunctionalInterface
+    public interface LocalFileWriter {
+        void write(Path target) throws IOException;
+    }
+    
+    private record UploadLimits(List<String> extensions, long maxBytes) {}
+    
+    /**
+     * Fails the upload as soon as more bytes than allowed have been read.
+     */
+    private static class SizeLimitedInputStream extends FilterInputStream {
+        
+        private final long maxBytes;
+        private long count;
+        
+        SizeLimitedInputStream(InputStream in, UploadLimits limits) {
+            super(in);
+            this.maxBytes = limits.maxBytes();
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+        
+        private void count(int n) {
+            count += n;
+            if (count > maxBytes) {
+                throw new FileStorageException("File size exceeds maximum allowed size of "
+                        + (maxBytes / (1024 * 1024)) + "MB");
+            }
+        }
+    }
 }
@@ -0,0 +1,8 @@
+package com.emasmetal.service;
+
+import java.util.UUID;
+
+/**
+ * Published when a gallery item gets a new original image; variants are rendered after commit.
+ */
+public record GalleryImageStoredEvent(UUID itemId, String imageUrl) {}
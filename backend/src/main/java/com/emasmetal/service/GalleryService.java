@@ -1,17 +1,33 @@
 package com.emasmetal.service;
 
 import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.dto.PageDto;
+import com.emasmetal.dto.SyncDto;
+import com.emasmetal.entity.ChangeLogEntry;
 import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.entity.ImageMetadata;
 import com.emasmetal.exception.ResourceNotFoundException;
 import com.emasmetal.mapper.DtoMapper;
 import com.emasmetal.repository.GalleryItemRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -23,22 +39,115 @@ public class GalleryService {
     
     private final GalleryItemRepository galleryItemRepository;
     private final FileStorageService fileStorageService;
+    private final FileDeletionService fileDeletionService;
+    private final ImageProcessingService imageProcessingService;
     private final DtoMapper dtoMapper;
+    private final ChangeLogService changeLogService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
     
+    @Value("${app.listing-cache.max-entries:256}")
+    private long cacheMaxEntries;
+    
+    @Value("${app.listing-cache.expire-after-write:PT30M}")
+    private Duration cacheExpireAfterWrite;
+    
+    @Value("${app.pagination.default-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${app.pagination.max-size:100}")
+    private int maxPageSize;
+    
+    // Public listings, by category
+    private ListingCache<GalleryItemDto.ListItem> listings;
+    
+    @PostConstruct
+    public void init() {
+        this.listings = new ListingCache<>("gallery", cacheMaxEntries, cacheExpireAfterWrite, objectMapper, meterRegistry);
+    }
+    
+    /**
+     * One page of gallery items in listing order, following {@code cursor} (null for the first
+     * page), optionally of one category. The cost of a page does not grow with the gallery.
+     */
     @Transactional(readOnly = true)
-    public List<GalleryItemDto.Response> getAllGalleryItems() {
-        return galleryItemRepository.findAllByOrderByDisplayOrderAscCreatedAtDesc()
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+    public PageDto.CursorPage<GalleryItemDto.ListItem> getGalleryPage(String cursor, Integer size, String category) {
+        PageCursor after = PageCursor.decode(cursor);
+        int limit = PageCursor.pageSize(size, defaultPageSize, maxPageSize);
+        String filter = category == null || category.isBlank() ? null : category;
+        
+        // One row more than asked for tells whether another page follows. Rows with a display order
+        // come first: the rest of the cursor's order, then the higher ones, then the unordered rows.
+        List<GalleryItemDto.ListItem> rows = new ArrayList<>(limit + 1);
+        if (after == null || after.displayOrder() != null) {
+            int displayOrder = after == null ? Integer.MIN_VALUE : after.displayOrder();
+            rows.addAll(galleryItemRepository.findListItemsWithOrderAfter(displayOrder,
+                    after == null ? PageCursor.END_OF_TIME : after.createdAt(),
+                    after == null ? PageCursor.MAX_ID : after.id(), filter, Limit.of(limit + 1)));
+            if (rows.size() <= limit) {
+                rows.addAll(galleryItemRepository.findListItemsAfterOrder(displayOrder, filter,
+                        Limit.of(limit + 1 - rows.size())));
+            }
+            if (rows.size() <= limit) {
+                rows.addAll(galleryItemRepository.findUnorderedListItemsAfter(PageCursor.END_OF_TIME, PageCursor.MAX_ID,
+                        filter, Limit.of(limit + 1 - rows.size())));
+            }
+        } else {
+            rows.addAll(galleryItemRepository.findUnorderedListItemsAfter(after.createdAt(), after.id(), filter,
+                    Limit.of(limit + 1)));
+        }
+        boolean more = rows.size() > limit;
+        List<GalleryItemDto.ListItem> page = more ? rows.subList(0, limit) : rows;
+        GalleryItemDto.ListItem last = more ? page.get(page.size() - 1) : null;
+        
+        return PageDto.CursorPage.<GalleryItemDto.ListItem>builder()
+                .items(List.copyOf(page))
+                .nextCursor(last == null ? null
+                        : new PageCursor(last.displayOrder(), last.createdAt(), last.id()).encode())
+                .build();
+    }
+    
+    /**
+     * {@link #loadAllGalleryItems()}, cached, as a ready-made JSON body.
+     */
+    @Transactional(readOnly = true)
+    public JsonSnapshot getAllGalleryItemsJson() {
+        return listings.getJson(null, this::loadAllGalleryItems);
     }
     
+    /**
+     * {@link #loadGalleryItemsByCategory(String)}, cached, as a ready-made JSON body.
+     */
     @Transactional(readOnly = true)
-    public List<GalleryItemDto.Response> getGalleryItemsByCategory(String category) {
-        return galleryItemRepository.findByCategoryOrderByDisplayOrderAsc(category)
+    public JsonSnapshot getGalleryItemsByCategoryJson(String category) {
+        return listings.getJson(category, () -> loadGalleryItemsByCategory(category));
+    }
+    
+    private List<GalleryItemDto.ListItem> loadAllGalleryItems() {
+        return galleryItemRepository.findAllListItems();
+    }
+    
+    private List<GalleryItemDto.ListItem> loadGalleryItemsByCategory(String category) {
+        return galleryItemRepository.findListItemsByCategory(category);
+    }
+    
+    /**
+     * Created, changed and deleted gallery items since {@code token}, for clients keeping a local copy.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public SyncDto.Changes<GalleryItemDto.Response> getChangesSince(String token) {
+        return changeLogService.changesSince(ChangeLogEntry.EntityType.GALLERY, token, ids -> galleryItemRepository.findAllById(ids)
                 .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+                .collect(Collectors.toMap(GalleryItem::getId, dtoMapper::toResponse)));
+    }
+    
+    /**
+     * Drops the cached listings once the current transaction commits; for changes made to
+     * gallery items without going through this service.
+     */
+    public void evictCachedListings() {
+        listings.invalidate();
     }
     
     @Transactional(readOnly = true)
@@ -48,42 +157,57 @@ public class GalleryService {
         return dtoMapper.toResponse(item);
     }
     
-    public GalleryItemDto.Response createGalleryItem(GalleryItemDto.CreateRequest request, MultipartFile image) {
-        if (image == null || image.isEmpty()) {
+    public GalleryItemDto.Response createGalleryItem(GalleryItemDto.CreateRequest request, StagedFile image) {
+        if (image == null) {
             throw new IllegalArgumentException("Image is required for gallery item");
         }
         
         GalleryItem item = dtoMapper.toEntity(request);
         
-        String imageUrl = fileStorageService.storeFile(image, "gallery");
+        // Read from the staged copy, before it is handed to the storage backend
+        item.setImageMetadata(imageProcessingService.describe(image.tempFile()));
+        String imageUrl = fileStorageService.promote(image);
         item.setImageUrl(imageUrl);
         
-        // TODO: Generate thumbnail (could use a library like Thumbnailator)
+        // The original is served until the background variants are ready
         item.setThumbnailUrl(imageUrl);
         
         GalleryItem saved = galleryItemRepository.save(item);
+        changeLogService.recordUpsert(ChangeLogEntry.EntityType.GALLERY, saved.getId());
+        listings.invalidate();
         log.info("Created gallery item: {} ({})", saved.getTitle(), saved.getId());
         
+        eventPublisher.publishEvent(new GalleryImageStoredEvent(saved.getId(), imageUrl));
+        
         return dtoMapper.toResponse(saved);
     }
     
-    public GalleryItemDto.Response updateGalleryItem(UUID id, GalleryItemDto.UpdateRequest request, MultipartFile image) {
+    public GalleryItemDto.Response updateGalleryItem(UUID id, GalleryItemDto.UpdateRequest request, StagedFile image) {
         GalleryItem item = galleryItemRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Gallery item not found with id: " + id));
         
         dtoMapper.updateEntity(item, request);
         
-        if (image != null && !image.isEmpty()) {
-            // Delete old image if exists
-            if (item.getImageUrl() != null) {
-                fileStorageService.deleteFile(item.getImageUrl());
+        if (image != null) {
+            ImageMetadata metadata = imageProcessingService.describe(image.tempFile());
+            String imageUrl = fileStorageService.promote(image);
+            if (imageUrl.equals(item.getImageUrl())) {
+                // Same content as before: drop the extra reference and keep the existing variants
+                fileStorageService.deleteFile(imageUrl);
+            } else {
+                // Delete old image and its variants if they exist
+                deleteImageFiles(item);
+                item.setImageUrl(imageUrl);
+                item.setImageMetadata(metadata);
+                item.setThumbnailUrl(imageUrl);
+                item.setImageVariants(null);
+                eventPublisher.publishEvent(new GalleryImageStoredEvent(item.getId(), imageUrl));
             }
-            String imageUrl = fileStorageService.storeFile(image, "gallery");
-            item.setImageUrl(imageUrl);
-            item.setThumbnailUrl(imageUrl);
         }
         
         GalleryItem saved = galleryItemRepository.save(item);
+        changeLogService.recordUpsert(ChangeLogEntry.EntityType.GALLERY, saved.getId());
+        listings.invalidate();
         log.info("Updated gallery item: {} ({})", saved.getTitle(), saved.getId());
         
         return dtoMapper.toResponse(saved);
@@ -94,14 +218,55 @@ public class GalleryService {
                 .orElseThrow(() -> new ResourceNotFoundException("Gallery item not found with id: " + id));
         
         // Delete image files
-        if (item.getImageUrl() != null) {
-            fileStorageService.deleteFile(item.getImageUrl());
-        }
-        if (item.getThumbnailUrl() != null && !item.getThumbnailUrl().equals(item.getImageUrl())) {
-            fileStorageService.deleteFile(item.getThumbnailUrl());
-        }
+        deleteImageFiles(item);
         
         galleryItemRepository.delete(item);
+        changeLogService.recordDelete(ChangeLogEntry.EntityType.GALLERY, item.getId());
+        listings.invalidate();
         log.info("Deleted gallery item: {} ({})", item.getTitle(), item.getId());
     }
+    
+    /**
+     * Called by the thumbnail worker once the variants of {@code imageUrl} are on disk.
+     * If the item was deleted or got a new image in the meantime the variants are discarded.
+     * Runs in a transaction of its own, since it may be called from another one's after-commit phase.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void applyImageVariants(UUID id, String imageUrl, Map<Integer, String> variants, String thumbnailUrl) {
+        GalleryItem item = galleryItemRepository.findById(id)
+                .filter(existing -> imageUrl.equals(existing.getImageUrl()))
+                .orElse(null);
+        
+        if (item == null) {
+            // Other items may still share the same (content-addressed) original
+            if (!fileStorageService.exists(imageUrl)) {
+                log.info("Discarding stale variants for gallery item {} ({})", id, imageUrl);
+                variants.values().forEach(fileStorageService::deleteFile);
+            }
+            return;
+        }
+        
+        item.setImageVariants(variants);
+        item.setThumbnailUrl(thumbnailUrl);
+        galleryItemRepository.save(item);
+        changeLogService.recordUpsert(ChangeLogEntry.EntityType.GALLERY, item.getId());
+        listings.invalidate();
+        log.info("Generated {} image variants for gallery item {}", variants.size(), id);
+    }
+    
+    private void deleteImageFiles(GalleryItem item) {
+        if (item.getImageUrl() == null) {
+            return;
+        }
+        
+        // Variants belong to the original: they go only once no other item shares that file
+        Set<String> derivedUrls = new LinkedHashSet<>();
+        if (item.getThumbnailUrl() != null && !item.getThumbnailUrl().equals(item.getImageUrl())) {
+            derivedUrls.add(item.getThumbnailUrl());
+        }
+        if (item.getImageVariants() != null) {
+            derivedUrls.addAll(item.getImageVariants().values());
+        }
+        fileDeletionService.enqueue(item.getImageUrl(), derivedUrls);
+    }
 }
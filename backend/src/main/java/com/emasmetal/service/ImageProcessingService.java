@@ -0,0 +1,274 @@
+package com.emasmetal.service;
+
+import com.emasmetal.entity.ImageMetadata;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+@Service
+@Slf4j
+public class ImageProcessingService {
+    
+    // Placeholders are computed from a sample no larger than this on either side
+    private static final int PLACEHOLDER_SAMPLE_SIZE = 32;
+    
+    public record DecodedImage(BufferedImage image, int width, int height, String format) {}
+    
+    /**
+     * The file is not an image any installed decoder can read. Retrying will not help.
+     */
+    public static class UnreadableImageException extends IOException {
+        
+        public UnreadableImageException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+    
+    @PostConstruct
+    public void init() {
+        // Picks up decoders from the application class path (e.g. WebP), which the JDK's
+        // registry misses when it is first used from a thread with another class loader
+        ImageIO.scanForPlugins();
+    }
+    
+    /**
+     * Reads the dimensions of an image and derives a dominant colour and BlurHash from a heavily
+     * subsampled decode. Best effort: returns null for files the decoder cannot read.
+     */
+    public ImageMetadata describe(Path source) {
+        try {
+            DecodedImage decoded = decode(source, PLACEHOLDER_SAMPLE_SIZE * 2, PLACEHOLDER_SAMPLE_SIZE * 2);
+            BufferedImage sample = flatten(resize(decoded.image(), PLACEHOLDER_SAMPLE_SIZE, PLACEHOLDER_SAMPLE_SIZE, false));
+            
+            int width = sample.getWidth();
+            int height = sample.getHeight();
+            int[] pixels = sample.getRGB(0, 0, width, height, null, 0, width);
+            
+            // More components along the longer side
+            boolean landscape = decoded.width() >= decoded.height();
+            String blurHash = BlurHash.encode(pixels, width, height, landscape ? 4 : 3, landscape ? 3 : 4);
+            
+            return ImageMetadata.builder()
+                    .width(decoded.width())
+                    .height(decoded.height())
+                    .dominantColor(dominantColor(pixels))
+                    .blurHash(blurHash)
+                    .build();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read image metadata from {}: {}", source.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Decodes an image with its EXIF orientation applied. When a target size is given (0 means
+     * unconstrained) the decoder subsamples the source so that no more pixels than needed are
+     * held in memory, while the decoded image stays at least as large as the target on every
+     * constrained axis. The returned width/height are those of the full-size, oriented original.
+     */
+    public DecodedImage decode(Path source, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                throw new IOException("Cannot open image: " + source);
+            }
+            
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new UnreadableImageException("Unsupported image format: " + source.getFileName(), null);
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                String format = reader.getFormatName().toLowerCase();
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                
+                Orientation orientation = format.equals("jpeg")
+                        ? ExifUtils.getExifOrientation(reader, 0)
+                        : null;
+                boolean rotated = isRotated(orientation);
+                int orientedWidth = rotated ? height : width;
+                int orientedHeight = rotated ? width : height;
+                
+                int subsampling = Integer.MAX_VALUE;
+                if (targetWidth > 0) {
+                    subsampling = Math.min(subsampling, orientedWidth / targetWidth);
+                }
+                if (targetHeight > 0) {
+                    subsampling = Math.min(subsampling, orientedHeight / targetHeight);
+                }
+                
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1 && subsampling != Integer.MAX_VALUE) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                
+                BufferedImage image = reader.read(0, param);
+                if (orientation != null && orientation != Orientation.TOP_LEFT) {
+                    image = ExifFilterUtils.getFilterForOrientation(orientation).apply(image);
+                }
+                
+                return new DecodedImage(image, orientedWidth, orientedHeight, format);
+            } catch (IIOException e) {
+                throw new UnreadableImageException("Corrupt image: " + source.getFileName(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    public BufferedImage resizeToWidth(BufferedImage image, int width) throws IOException {
+        if (image.getWidth() <= width) {
+            return image;
+        }
+        return Thumbnails.of(image).width(width).asBufferedImage();
+    }
+    
+    /**
+     * Resizes into a width x height box (either may be 0 for "any"). {@code cover} fills the
+     * box and crops the overflow around the centre; otherwise the image is fitted inside it.
+     * Only cover ever upscales.
+     */
+    public BufferedImage resize(BufferedImage image, int width, int height, boolean cover) throws IOException {
+        if (width > 0 && height > 0) {
+            if (cover) {
+                return Thumbnails.of(image).size(width, height).crop(Positions.CENTER).asBufferedImage();
+            }
+            if (image.getWidth() <= width && image.getHeight() <= height) {
+                return image;
+            }
+            return Thumbnails.of(image).size(width, height).asBufferedImage();
+        }
+        if (width > 0) {
+            return resizeToWidth(image, width);
+        }
+        if (image.getHeight() <= height) {
+            return image;
+        }
+        return Thumbnails.of(image).height(height).asBufferedImage();
+    }
+    
+    /**
+     * PNG sources keep their transparency; everything else is re-encoded as JPEG.
+     */
+    public String outputFormat(String sourceFormat) {
+        return "png".equals(sourceFormat) ? "png" : "jpeg";
+    }
+    
+    public String extensionFor(String format) {
+        return "png".equals(format) ? "png" : "jpg";
+    }
+    
+    /**
+     * Writes the image through a temporary file in the target directory and moves it into
+     * place, so readers never observe a half-written derivative.
+     */
+    public void write(BufferedImage image, String format, float quality, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".", ".tmp");
+        try {
+            if ("png".equals(format)) {
+                ImageIO.write(image, "png", temp.toFile());
+            } else {
+                // JPEG has no alpha channel, e.g. for transparent WebP sources
+                writeProgressiveJpeg(image.getColorModel().hasAlpha() ? flatten(image) : image, quality, temp);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private void writeProgressiveJpeg(BufferedImage image, float quality, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+    
+    /**
+     * Draws the image onto white so that transparent logos get a sensible placeholder.
+     */
+    private BufferedImage flatten(BufferedImage image) {
+        BufferedImage flat = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = flat.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return flat;
+    }
+    
+    /**
+     * Most common colour after quantising to 4 bits per channel, averaged over the pixels in
+     * that bucket. Unlike a plain average this does not turn a red part on a grey bench brown.
+     */
+    private String dominantColor(int[] pixels) {
+        int[] counts = new int[4096];
+        long[][] sums = new long[4096][3];
+        for (int pixel : pixels) {
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            int bucket = ((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4);
+            counts[bucket]++;
+            sums[bucket][0] += r;
+            sums[bucket][1] += g;
+            sums[bucket][2] += b;
+        }
+        
+        int best = 0;
+        for (int bucket = 1; bucket < counts.length; bucket++) {
+            if (counts[bucket] > counts[best]) {
+                best = bucket;
+            }
+        }
+        int n = Math.max(1, counts[best]);
+        return String.format("#%02x%02x%02x", sums[best][0] / n, sums[best][1] / n, sums[best][2] / n);
+    }
+    
+    private boolean isRotated(Orientation orientation) {
+        if (orientation == null) {
+            return false;
+        }
+        return switch (orientation) {
+            case LEFT_TOP, RIGHT_TOP, RIGHT_BOTTOM, LEFT_BOTTOM -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,157 @@
+package com.emasmetal.service;
+
+import com.emasmetal.exception.FileStorageException;
+import com.emasmetal.exception.ResourceNotFoundException;
+import com.emasmetal.storage.StoredObject;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageResizeService {
+
+    private final ImageProcessingService imageProcessingService;
+    private final FileStorageService fileStorageService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${image.resize.allowed-sizes:160,320,480,640,960,1280,1920}")
+    private String allowedSizesStr;
+
+    @Value("${image.resize.allowed-qualities:60,75,85}")
+    private String allowedQualitiesStr;
+
+    @Value("${image.resize.default-quality:75}")
+    private int defaultQuality;
+
+    @Value("${image.resize.source-directories:gallery,logos}")
+    private String sourceDirectoriesStr;
+
+    @Value("${image.resize.cache-dir:./cache/img}")
+    private String cacheDir;
+
+    @Value("${image.resize.cache-max-bytes:536870912}")
+    private long cacheMaxBytes;
+
+    private Set<Integer> allowedSizes;
+    private Set<Integer> allowedQualities;
+    private List<String> sourceDirectories;
+    private DiskLruCache cache;
+
+    /**
+     * An open cached rendering; the stream stays readable even if the cache evicts the file meanwhile.
+     */
+    public record ResizedImage(InputStream content, long size, MediaType contentType) {}
+
+    @PostConstruct
+    public void init() throws IOException {
+        this.allowedSizes = parseIntegers(allowedSizesStr);
+        this.allowedQualities = parseIntegers(allowedQualitiesStr);
+        this.sourceDirectories = Arrays.asList(sourceDirectoriesStr.toLowerCase().split(","));
+        this.cache = new DiskLruCache(Paths.get(cacheDir), cacheMaxBytes);
+        cache.init();
+        cache.monitor(meterRegistry, "image-derivatives");
+    }
+
+    /**
+     * Returns a derivative of an uploaded image, rendering and caching it on the first request.
+     *
+     * @param relativePath path below the uploads root, e.g. {@code gallery/<file>.jpg}
+     * @param fit          {@code contain} (fit inside the box) or {@code cover} (fill and crop)
+     */
+    public ResizedImage getResized(String relativePath, Integer width, Integer height, String fit, Integer quality) {
+        int w = validateSize("w", width);
+        int h = validateSize("h", height);
+        if (w == 0 && h == 0) {
+            throw new IllegalArgumentException("At least one of w or h is required");
+        }
+
+        boolean cover = switch (fit == null ? "contain" : fit.toLowerCase()) {
+            case "contain" -> false;
+            case "cover" -> true;
+            default -> throw new IllegalArgumentException("fit must be 'contain' or 'cover'");
+        };
+        if (cover && (w == 0 || h == 0)) {
+            throw new IllegalArgumentException("fit=cover requires both w and h");
+        }
+
+        int q = quality != null ? quality : defaultQuality;
+        if (!allowedQualities.contains(q)) {
+            throw new IllegalArgumentException("q must be one of " + allowedQualities);
+        }
+
+        StoredObject source = resolveSource(relativePath);
+        String format = relativePath.toLowerCase().endsWith(".png") ? "png" : "jpeg";
+
+        try {
+            // Source files are never rewritten in place; the mtime only guards against restores
+            String key = relativePath + "|" + source.lastModified().toEpochMilli()
+                    + "|" + w + "x" + h + "|" + (cover ? "cover" : "contain") + "|" + q;
+
+            try (DiskLruCache.Lease derivative = cache.acquire(key, target -> {
+                ImageProcessingService.DecodedImage decoded = fileStorageService.withLocalFile(source.key(),
+                        file -> imageProcessingService.decode(file, w, h));
+                BufferedImage resized = imageProcessingService.resize(decoded.image(), w, h, cover);
+                imageProcessingService.write(resized, format, q / 100f, target);
+                log.debug("Rendered {} at {}x{} ({}, q={})", relativePath, w, h, fit, q);
+            })) {
+                FileChannel channel = FileChannel.open(derivative.path(), StandardOpenOption.READ);
+                try {
+                    return new ResizedImage(Channels.newInputStream(channel), channel.size(),
+                            "png".equals(format) ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG);
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Could not resize image " + relativePath, e);
+        }
+    }
+
+    private StoredObject resolveSource(String relativePath) {
+        String[] segments = relativePath.split("/");
+        String category = FileStorageService.categoryOf(relativePath).toLowerCase();
+        if (segments.length < 2 || !sourceDirectories.contains(category) || Arrays.asList(segments).contains("..")) {
+            throw new ResourceNotFoundException("Image not found: " + relativePath);
+        }
+
+        return fileStorageService.stat(relativePath)
+                .orElseThrow(() -> new ResourceNotFoundException("Image not found: " + relativePath));
+    }
+
+    private int validateSize(String name, Integer value) {
+        if (value == null) {
+            return 0;
+        }
+        if (!allowedSizes.contains(value)) {
+            throw new IllegalArgumentException(name + " must be one of " + allowedSizes);
+        }
+        return value;
+    }
+
+    private static Set<Integer> parseIntegers(String values) {
+        return Arrays.stream(values.split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,118 @@
+package com.emasmetal.service;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the manifest of a bulk import: a JSON array of objects, or CSV (RFC 4180) whose first
+ * line names the columns. Either way every row becomes a map of field name to value, with empty
+ * CSV cells left out.
+ */
+final class ImportManifest {
+
+    private ImportManifest() {
+    }
+
+    static List<Map<String, Object>> parse(byte[] content, String filename, ObjectMapper objectMapper) {
+        String text = new String(content, StandardCharsets.UTF_8);
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+
+        boolean json = filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".json")
+                || text.stripLeading().startsWith("[");
+        if (!json) {
+            return parseCsv(text);
+        }
+        try {
+            List<Map<String, Object>> rows = objectMapper.readValue(text, new TypeReference<>() {});
+            if (rows == null || rows.contains(null)) {
+                throw new IllegalArgumentException("Manifest must be a JSON array of objects");
+            }
+            return rows;
+        } catch (JacksonException e) {
+            throw new IllegalArgumentException("Manifest is not a valid JSON array of objects", e);
+        }
+    }
+
+    private static List<Map<String, Object>> parseCsv(String text) {
+        List<List<String>> records = readRecords(text);
+        if (records.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> header = records.get(0).stream().map(String::trim).toList();
+        List<Map<String, Object>> rows = new ArrayList<>(records.size() - 1);
+        for (int i = 1; i < records.size(); i++) {
+            List<String> values = records.get(i);
+            if (values.size() > header.size()) {
+                throw new IllegalArgumentException("Manifest row " + i + " has more values than the header");
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int column = 0; column < values.size(); column++) {
+                String value = values.get(column).trim();
+                if (!value.isEmpty()) {
+                    row.put(header.get(column), value);
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Quoted values may hold commas, line breaks and doubled quotes; blank lines are skipped
+    private static List<List<String>> readRecords(String text) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                endRecord(records, record, value);
+                record = new ArrayList<>();
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Manifest ends inside a quoted value");
+        }
+        endRecord(records, record, value);
+        return records;
+    }
+
+    private static void endRecord(List<List<String>> records, List<String> record, StringBuilder value) {
+        record.add(value.toString());
+        value.setLength(0);
+        if (record.size() > 1 || !record.get(0).isBlank()) {
+            records.add(record);
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.dto.ImportDto;
+import com.emasmetal.dto.ReferenceDto;
+import com.emasmetal.entity.ChangeLogEntry;
+import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.entity.Reference;
+import com.emasmetal.entity.UuidV7Generator;
+import com.emasmetal.exception.ConflictException;
+import com.emasmetal.exception.ResourceNotFoundException;
+import com.emasmetal.mapper.DtoMapper;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Creates gallery items or references in bulk from a ZIP archive of images and a manifest with
+ * one row per item (see {@link ImportManifest}); a row's {@code file} column names its image in
+ * the archive. The archive is read as it arrives: every entry is staged and handed to a bounded
+ * worker pool, which stores it and renders the gallery variants while the following entries are
+ * still being received. Stored rows are inserted in JDBC batches, each batch in its own
+ * transaction, so rows show up, and stay, while the rest of the import is still running.
+ *
+ * <p>Progress is kept in memory on the node running the import, for {@code app.import.job-retention}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImportService {
+
+    private static final String MANIFEST_PART = "manifest";
+    private static final String ARCHIVE_PART = "archive";
+    private static final String FILE_COLUMN = "file";
+    private static final int MAX_MANIFEST_BYTES = 1024 * 1024;
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    private final FileStorageService fileStorageService;
+    private final ImageProcessingService imageProcessingService;
+    private final ThumbnailService thumbnailService;
+    private final GalleryService galleryService;
+    private final ReferenceService referenceService;
+    private final ChangeLogService changeLogService;
+    private final GalleryItemRepository galleryItemRepository;
+    private final ReferenceRepository referenceRepository;
+    private final DtoMapper dtoMapper;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.import.threads:4}")
+    private int threads;
+
+    @Value("${app.import.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.import.max-rows:5000}")
+    private int maxRows;
+
+    @Value("${app.import.max-request-size:536870912}")
+    private long maxRequestSize;
+
+    @Value("${app.import.job-retention:PT24H}")
+    private Duration jobRetention;
+
+    private TransactionTemplate batchTransaction;
+    private Cache<UUID, ImportJob<?, ?>> jobs;
+
+    // One import at a time, so the worker pool bounds the load of all of them
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.jobs = Caffeine.newBuilder().expireAfterWrite(jobRetention).build();
+    }
+
+    public ImportDto.Progress importGallery(HttpServletRequest request) {
+        return start(request, new GalleryImporter());
+    }
+
+    public ImportDto.Progress importReferences(HttpServletRequest request) {
+        return start(request, new ReferenceImporter());
+    }
+
+    public ImportDto.Progress getProgress(UUID id) {
+        ImportJob<?, ?> job = jobs.getIfPresent(id);
+        if (job == null) {
+            throw new ResourceNotFoundException("Import not found with id: " + id);
+        }
+        return job.progress();
+    }
+
+    /**
+     * What differs between the imported types: the manifest binding, how a row and its file
+     * become an entity, and how a batch of entities is written.
+     */
+    private interface Importer<T, E> {
+
+        String kind();
+
+        String subDirectory();
+
+        Class<T> requestType();
+
+        boolean fileRequired();
+
+        // Stores the file (null if the row has none) and returns the entity, not yet saved
+        E build(T request, StagedFile file);
+
+        // Stored files the entity holds a reference to
+        List<String> files(E entity);
+
+        // Runs inside the batch transaction
+        void insert(List<E> entities);
+    }
+
+    private final class GalleryImporter implements Importer<GalleryItemDto.CreateRequest, GalleryItem> {
+
+        @Override
+        public String kind() {
+            return "gallery";
+        }
+
+        @Override
+        public String subDirectory() {
+            return "gallery";
+        }
+
+        @Override
+        public Class<GalleryItemDto.CreateRequest> requestType() {
+            return GalleryItemDto.CreateRequest.class;
+        }
+
+        @Override
+        public boolean fileRequired() {
+            return true;
+        }
+
+        @Override
+        public GalleryItem build(GalleryItemDto.CreateRequest request, StagedFile file) {
+            GalleryItem item = dtoMapper.toEntity(request);
+            item.setImageMetadata(imageProcessingService.describe(file.tempFile()));
+            String imageUrl = fileStorageService.promote(file);
+            item.setImageUrl(imageUrl);
+            item.setThumbnailUrl(imageUrl);
+
+            // Rendered here rather than queued, so a large import cannot overflow the image queue
+            try {
+                Map<Integer, String> variants = thumbnailService.renderVariants(imageUrl);
+                item.setImageVariants(variants);
+                item.setThumbnailUrl(ThumbnailService.thumbnailUrl(imageUrl, variants));
+            } catch (IOException | RuntimeException e) {
+                // Left without variants, so the startup backfill tries again
+                log.warn("Could not generate variants for imported image {}", imageUrl, e);
+            }
+            return item;
+        }
+
+        @Override
+        public List<String> files(GalleryItem item) {
+            List<String> files = new ArrayList<>();
+            files.add(item.getImageUrl());
+            if (item.getImageVariants() != null) {
+                files.addAll(item.getImageVariants().values());
+            }
+            return files;
+        }
+
+        @Override
+        public void insert(List<GalleryItem> items) {
+            galleryItemRepository.saveAll(items);
+            galleryItemRepository.flush();
+            changeLogService.recordUpserts(ChangeLogEntry.EntityType.GALLERY,
+                    items.stream().map(GalleryItem::getId).toList());
+            galleryService.evictCachedListings();
+        }
+    }
+
+    private final class ReferenceImporter implements Importer<ReferenceDto.CreateRequest, Reference> {
+
+        @Override
+        public String kind() {
+            return "references";
+        }
+
+        @Override
+        public String subDirectory() {
+            return "logos";
+        }
+
+        @Override
+        public Class<ReferenceDto.CreateRequest> requestType() {
+            return ReferenceDto.CreateRequest.class;
+        }
+
+        @Override
+        public boolean fileRequired() {
+            return false;
+        }
+
+        @Override
+        public Reference build(ReferenceDto.CreateRequest request, StagedFile file) {
+            Reference reference = dtoMapper.toEntity(request);
+            if (file != null) {
+                reference.setLogoMetadata(imageProcessingService.describe(file.tempFile()));
+                reference.setLogoUrl(fileStorageService.promote(file));
+            }
+            return reference;
+        }
+
+        @Override
+        public List<String> files(Reference reference) {
+            return reference.getLogoUrl() == null ? List.of() : List.of(reference.getLogoUrl());
+        }
+
+        @Override
+        public void insert(List<Reference> references) {
+            referenceRepository.saveAll(references);
+            referenceRepository.flush();
+            changeLogService.recordUpserts(ChangeLogEntry.EntityType.REFERENCE,
+                    references.stream().map(Reference::getId).toList());
+            referenceService.evictCachedListings();
+        }
+    }
+
+    private record Row<T>(int number, String file, T request) {}
+
+    // A row whose file is stored, waiting for its batch insert
+    private record Stored<T, E>(Row<T> row, E entity) {}
+
+    private final class ImportJob<T, E> {
+
+        final UUID id = UuidV7Generator.next();
+        final Importer<T, E> importer;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final int total;
+
+        // Rows still waiting for their archive entry, by file name
+        final Map<String, Row<T>> awaitingFile = new HashMap<>();
+        final List<Row<T>> withoutFile = new ArrayList<>();
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // Receiving is usually faster than storing; keep the number of staged files bounded
+        final Semaphore inFlight = new Semaphore(threads * 4);
+        final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+        final BlockingQueue<Stored<T, E>> stored = new LinkedBlockingQueue<>();
+        final ReentrantLock insertLock = new ReentrantLock();
+
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final ConcurrentLinkedQueue<ImportDto.Failure> failures = new ConcurrentLinkedQueue<>();
+        volatile String status = "receiving";
+        volatile LocalDateTime finishedAt;
+
+        ImportJob(Importer<T, E> importer, List<Map<String, Object>> manifest) {
+            this.importer = importer;
+            this.total = manifest.size();
+            for (int i = 0; i < manifest.size(); i++) {
+                addRow(i + 1, new HashMap<>(manifest.get(i)));
+            }
+        }
+
+        private void addRow(int number, Map<String, Object> values) {
+            Object fileValue = values.remove(FILE_COLUMN);
+            String file = fileValue == null || fileValue.toString().isBlank() ? null : fileValue.toString().trim();
+
+            T request;
+            try {
+                request = objectMapper.convertValue(values, importer.requestType());
+            } catch (IllegalArgumentException e) {
+                fail(number, file, e.getCause() instanceof JsonMappingException mapping && !mapping.getPath().isEmpty()
+                        ? "Invalid value for '" + mapping.getPath().get(0).getFieldName() + "'"
+                        : "Invalid values");
+                return;
+            }
+            Set<ConstraintViolation<T>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                fail(number, file, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                return;
+            }
+
+            Row<T> row = new Row<>(number, file, request);
+            if (file == null) {
+                if (importer.fileRequired()) {
+                    fail(number, null, "Column '" + FILE_COLUMN + "' is required");
+                } else {
+                    withoutFile.add(row);
+                }
+            } else if (awaitingFile.putIfAbsent(file, row) != null) {
+                fail(number, file, "File is already used by row " + awaitingFile.get(file).number());
+            }
+        }
+
+        // The row an archive entry belongs to, matched on its full path or else its file name
+        Row<T> claim(String entryName) {
+            Row<T> row = awaitingFile.remove(entryName);
+            return row != null ? row : awaitingFile.remove(baseName(entryName));
+        }
+
+        void submit(Row<T> row, StagedFile file) {
+            inFlight.acquireUninterruptibly();
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    process(row, file);
+                } finally {
+                    inFlight.release();
+                }
+            }, pool));
+        }
+
+        private void process(Row<T> row, StagedFile file) {
+            try {
+                stored.add(new Stored<>(row, importer.build(row.request(), file)));
+            } catch (RuntimeException e) {
+                if (file != null) {
+                    file.discard();
+                }
+                fail(row.number(), row.file(), e.getMessage());
+            }
+            // Whoever fills a batch writes it, unless another thread already is
+            if (stored.size() >= batchSize && insertLock.tryLock()) {
+                try {
+                    insertBatches(false);
+                } finally {
+                    insertLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Called once the request is done with the archive; {@code error} is why it stopped
+         * early, if it did. The job finishes in the background once every task has.
+         */
+        void archiveDone(String error) {
+            String reason = error == null ? "Not found in the archive" : "Not received: " + error;
+            awaitingFile.values().forEach(row -> fail(row.number(), row.file(), reason));
+            awaitingFile.clear();
+            if (error == null) {
+                withoutFile.forEach(row -> submit(row, null));
+            } else {
+                withoutFile.forEach(row -> fail(row.number(), null, reason));
+            }
+            status = "processing";
+
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).whenComplete((ignored, e) -> {
+                insertLock.lock();
+                try {
+                    insertBatches(true);
+                } finally {
+                    insertLock.unlock();
+                    pool.shutdown();
+                    status = error == null ? "completed" : "failed";
+                    finishedAt = LocalDateTime.now();
+                    running.set(false);
+                    log.info("Import {} of {} finished: {} created, {} failed", id, importer.kind(),
+                            created.get(), failed.get());
+                }
+            });
+        }
+
+        private void insertBatches(boolean all) {
+            while (stored.size() >= batchSize || all && !stored.isEmpty()) {
+                List<Stored<T, E>> batch = new ArrayList<>(batchSize);
+                stored.drainTo(batch, batchSize);
+                List<E> entities = batch.stream().map(Stored::entity).toList();
+                try {
+                    batchTransaction.executeWithoutResult(transaction -> {
+                        entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+                        importer.insert(entities);
+                    });
+                    created.addAndGet(batch.size());
+                } catch (RuntimeException e) {
+                    log.warn("Could not insert a batch of {} imported {} rows", batch.size(), importer.kind(), e);
+                    for (Stored<T, E> item : batch) {
+                        importer.files(item.entity()).forEach(fileStorageService::deleteFile);
+                        fail(item.row().number(), item.row().file(), "Could not be saved: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        void fail(int row, String file, String message) {
+            if (failed.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+                failures.add(ImportDto.Failure.builder().row(row).file(file).message(message).build());
+            }
+        }
+
+        ImportDto.Progress progress() {
+            int createdCount = created.get();
+            int failedCount = failed.get();
+            return ImportDto.Progress.builder()
+                    .id(id)
+                    .kind(importer.kind())
+                    .status(status)
+                    .total(total)
+                    .processed(createdCount + failedCount)
+                    .created(createdCount)
+                    .failed(failedCount)
+                    .failures(List.copyOf(failures))
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+
+    private <T, E> ImportDto.Progress start(HttpServletRequest request, Importer<T, E> importer) {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new IllegalArgumentException("Request must be multipart/form-data");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new ConflictException("An import is already running");
+        }
+
+        JakartaServletFileUpload<?, ?> upload = new JakartaServletFileUpload<>();
+        upload.setSizeMax(maxRequestSize);
+
+        ImportJob<T, E> job = null;
+        try {
+            FileItemInputIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+
+                if (MANIFEST_PART.equals(item.getFieldName()) && job == null) {
+                    job = new ImportJob<>(importer, readManifest(item));
+                    jobs.put(job.id, job);
+                    log.info("Import {} of {} started: {} rows", job.id, importer.kind(), job.total);
+                } else if (ARCHIVE_PART.equals(item.getFieldName())) {
+                    if (job == null) {
+                        throw new IllegalArgumentException(
+                                "Part '" + MANIFEST_PART + "' must come before part '" + ARCHIVE_PART + "'");
+                    }
+                    extract(job, item.getInputStream());
+                }
+                // Any other part is skipped by the iterator
+            }
+        } catch (FileUploadSizeException e) {
+            throw abort(job, "request is larger than " + maxRequestSize + " bytes",
+                    new MaxUploadSizeExceededException(maxRequestSize, e));
+        } catch (FileUploadException e) {
+            throw abort(job, "malformed multipart request",
+                    new IllegalArgumentException("Malformed multipart request", e));
+        } catch (IOException e) {
+            throw abort(job, e.getMessage(), new IllegalArgumentException("Could not read archive: " + e.getMessage(), e));
+        } catch (RuntimeException e) {
+            throw abort(job, e.getMessage(), e);
+        }
+
+        if (job == null) {
+            running.set(false);
+            throw new IllegalArgumentException("Required part '" + MANIFEST_PART + "' is missing");
+        }
+        job.archiveDone(null);
+        return job.progress();
+    }
+
+    // Rows stored before the failure are kept; the job records the rest as failed
+    private RuntimeException abort(ImportJob<?, ?> job, String reason, RuntimeException e) {
+        if (job == null) {
+            running.set(false);
+            return e;
+        }
+        job.archiveDone(reason);
+        log.warn("Import {} stopped receiving: {}", job.id, reason);
+        if (e instanceof IllegalArgumentException) {
+            return new IllegalArgumentException(e.getMessage() + " (import " + job.id + " keeps the rows received before)", e);
+        }
+        return e;
+    }
+
+    private List<Map<String, Object>> readManifest(FileItemInput item) throws IOException {
+        byte[] content;
+        try (InputStream in = item.getInputStream()) {
+            content = in.readNBytes(MAX_MANIFEST_BYTES + 1);
+        }
+        if (content.length > MAX_MANIFEST_BYTES) {
+            throw new IllegalArgumentException("Part '" + MANIFEST_PART + "' is too large");
+        }
+        List<Map<String, Object>> rows = ImportManifest.parse(content, item.getName(), objectMapper);
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Manifest has no rows");
+        }
+        if (rows.size() > maxRows) {
+            throw new IllegalArgumentException("Manifest has more than " + maxRows + " rows");
+        }
+        return rows;
+    }
+
+    private <T> void extract(ImportJob<T, ?> job, InputStream archive) throws IOException {
+        // Not closed, for the same reason FileStorageService.stage leaves its input open
+        ZipInputStream zip = new ZipInputStream(archive);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            Row<T> row = job.claim(entry.getName());
+            if (row == null) {
+                // Not in the manifest, or a second entry for the same file
+                continue;
+            }
+
+            StagedFile file;
+            try {
+                // Size and content are checked on the decompressed bytes, so an archive cannot
+                // smuggle in more than one image's worth per entry
+                file = fileStorageService.stage(zip, baseName(entry.getName()), null, job.importer.subDirectory());
+            } catch (RuntimeException e) {
+                job.fail(row.number(), row.file(), e.getMessage());
+                continue;
+            }
+            job.submit(row, file);
+        }
+    }
+
+    private static String baseName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+}
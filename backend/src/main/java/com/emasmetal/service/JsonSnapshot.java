@@ -0,0 +1,31 @@
+package com.emasmetal.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body serialized once, as UTF-8 JSON and gzipped, with a tag derived from its
+ * content. The arrays are shared by every response and must not be modified.
+ */
+public record JsonSnapshot(byte[] body, byte[] gzippedBody, String etag) {
+
+    static JsonSnapshot of(byte[] body) {
+        try {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(body);
+            }
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return new JsonSnapshot(body, gzipped.toByteArray(), HexFormat.of().formatHex(hash, 0, 16));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
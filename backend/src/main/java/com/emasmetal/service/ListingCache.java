@@ -0,0 +1,81 @@
+package com.emasmetal.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-memory cache of mapped DTO lists in their serialized {@link JsonSnapshot} form, keyed
+ * by filter ({@code null} for the unfiltered list). Entries are keyed by a version
+ * as well: {@link #invalidate()} moves the version on once the current transaction commits, so a
+ * list loaded from data read before the change can never be served afterwards, even if it is
+ * stored after the invalidation.
+ *
+ * <p>Hits, misses and evictions are published as the {@code cache.*} meters tagged with the
+ * cache name.
+ */
+class ListingCache<T> {
+
+    private record Key(long version, String filter) {}
+
+    private final Cache<Key, JsonSnapshot> cache;
+    private final AtomicLong version = new AtomicLong();
+    private final ObjectMapper objectMapper;
+
+    ListingCache(String name, long maxEntries, Duration expireAfterWrite,
+                 ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    /**
+     * The cached list for {@code filter} as JSON, loading it on a miss.
+     */
+    JsonSnapshot getJson(String filter, Supplier<List<T>> loader) {
+        // Read before loading, so data older than the version never gets stored under it
+        return cache.get(new Key(version.get(), filter), key -> {
+            List<T> items = loader.get();
+            try {
+                return JsonSnapshot.of(objectMapper.writeValueAsBytes(items));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not serialize " + items.size() + " listing entries", e);
+            }
+        });
+    }
+
+    /**
+     * Drops every list once the current transaction commits, or right away outside of one.
+     */
+    void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictAll();
+                }
+            });
+        } else {
+            evictAll();
+        }
+    }
+
+    private void evictAll() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,57 @@
+package com.emasmetal.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a keyset-paginated listing: the sort key of the last row of a page, encoded as an
+ * opaque URL-safe string. Clients only hand it back.
+ */
+record PageCursor(Integer displayOrder, LocalDateTime createdAt, UUID id) {
+
+    private static final String SEPARATOR = "|";
+
+    // Sorts after every real row in a newest-first listing
+    static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+    static final UUID MAX_ID = new UUID(-1L, -1L);
+
+    String encode() {
+        String value = (displayOrder == null ? "" : displayOrder.toString()) + SEPARATOR + createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The requested page size, or the default, capped at {@code maxSize}.
+     */
+    static int pageSize(Integer requested, int defaultSize, int maxSize) {
+        if (requested == null) {
+            return defaultSize;
+        }
+        if (requested < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        return Math.min(requested, maxSize);
+    }
+
+    /**
+     * @return null for a null or blank cursor, i.e. the first page
+     */
+    static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            String[] parts = value.split("\\|", -1);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException();
+            }
+            return new PageCursor(parts[0].isEmpty() ? null : Integer.valueOf(parts[0]),
+                    LocalDateTime.parse(parts[1]), UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package com.emasmetal.service;
 
 import com.emasmetal.dto.ReferenceDto;
+import com.emasmetal.dto.SyncDto;
+import com.emasmetal.entity.ChangeLogEntry;
+import com.emasmetal.entity.ImageMetadata;
 import com.emasmetal.entity.Reference;
 import com.emasmetal.exception.ResourceNotFoundException;
 import com.emasmetal.mapper.DtoMapper;
 import com.emasmetal.repository.ReferenceRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -23,22 +32,67 @@ public class ReferenceService {
     
     private final ReferenceRepository referenceRepository;
     private final FileStorageService fileStorageService;
+    private final FileDeletionService fileDeletionService;
+    private final ImageProcessingService imageProcessingService;
     private final DtoMapper dtoMapper;
+    private final ChangeLogService changeLogService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
     
+    @Value("${app.listing-cache.max-entries:256}")
+    private long cacheMaxEntries;
+    
+    @Value("${app.listing-cache.expire-after-write:PT30M}")
+    private Duration cacheExpireAfterWrite;
+    
+    // Public listings, by industry
+    private ListingCache<ReferenceDto.ListItem> listings;
+    
+    @PostConstruct
+    public void init() {
+        this.listings = new ListingCache<>("references", cacheMaxEntries, cacheExpireAfterWrite, objectMapper, meterRegistry);
+    }
+    
+    /**
+     * {@link #loadAllReferences()}, cached, as a ready-made JSON body.
+     */
     @Transactional(readOnly = true)
-    public List<ReferenceDto.Response> getAllReferences() {
-        return referenceRepository.findAllByOrderByDisplayOrderAscCreatedAtDesc()
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+    public JsonSnapshot getAllReferencesJson() {
+        return listings.getJson(null, this::loadAllReferences);
     }
     
+    /**
+     * {@link #loadReferencesByIndustry(String)}, cached, as a ready-made JSON body.
+     */
     @Transactional(readOnly = true)
-    public List<ReferenceDto.Response> getReferencesByIndustry(String industry) {
-        return referenceRepository.findByIndustryOrderByDisplayOrderAsc(industry)
+    public JsonSnapshot getReferencesByIndustryJson(String industry) {
+        return listings.getJson(industry, () -> loadReferencesByIndustry(industry));
+    }
+    
+    private List<ReferenceDto.ListItem> loadAllReferences() {
+        return referenceRepository.findAllListItems();
+    }
+    
+    private List<ReferenceDto.ListItem> loadReferencesByIndustry(String industry) {
+        return referenceRepository.findListItemsByIndustry(industry);
+    }
+    
+    /**
+     * Created, changed and deleted references since {@code token}, for clients keeping a local copy.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public SyncDto.Changes<ReferenceDto.Response> getChangesSince(String token) {
+        return changeLogService.changesSince(ChangeLogEntry.EntityType.REFERENCE, token, ids -> referenceRepository.findAllById(ids)
                 .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+                .collect(Collectors.toMap(Reference::getId, dtoMapper::toResponse)));
+    }
+    
+    /**
+     * Drops the cached listings once the current transaction commits; for changes made to
+     * references without going through this service.
+     */
+    public void evictCachedListings() {
+        listings.invalidate();
     }
     
     @Transactional(readOnly = true)
@@ -48,36 +102,44 @@ public class ReferenceService {
         return dtoMapper.toResponse(reference);
     }
     
-    public ReferenceDto.Response createReference(ReferenceDto.CreateRequest request, MultipartFile logo) {
+    public ReferenceDto.Response createReference(ReferenceDto.CreateRequest request, StagedFile logo) {
         Reference reference = dtoMapper.toEntity(request);
         
-        if (logo != null && !logo.isEmpty()) {
-            String logoUrl = fileStorageService.storeFile(logo, "logos");
-            reference.setLogoUrl(logoUrl);
+        if (logo != null) {
+            reference.setLogoMetadata(imageProcessingService.describe(logo.tempFile()));
+            reference.setLogoUrl(fileStorageService.promote(logo));
         }
         
         Reference saved = referenceRepository.save(reference);
+        changeLogService.recordUpsert(ChangeLogEntry.EntityType.REFERENCE, saved.getId());
+        listings.invalidate();
         log.info("Created reference: {} ({})", saved.getName(), saved.getId());
         
         return dtoMapper.toResponse(saved);
     }
     
-    public ReferenceDto.Response updateReference(UUID id, ReferenceDto.UpdateRequest request, MultipartFile logo) {
+    public ReferenceDto.Response updateReference(UUID id, ReferenceDto.UpdateRequest request, StagedFile logo) {
         Reference reference = referenceRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Reference not found with id: " + id));
         
         dtoMapper.updateEntity(reference, request);
         
-        if (logo != null && !logo.isEmpty()) {
+        if (logo != null) {
+            ImageMetadata logoMetadata = imageProcessingService.describe(logo.tempFile());
+            // Store first: identical content only gains a reference before the old one is released
+            String logoUrl = fileStorageService.promote(logo);
+            
             // Delete old logo if exists
             if (reference.getLogoUrl() != null) {
-                fileStorageService.deleteFile(reference.getLogoUrl());
+                fileDeletionService.enqueue(reference.getLogoUrl());
             }
-            String logoUrl = fileStorageService.storeFile(logo, "logos");
             reference.setLogoUrl(logoUrl);
+            reference.setLogoMetadata(logoMetadata);
         }
         
         Reference saved = referenceRepository.save(reference);
+        changeLogService.recordUpsert(ChangeLogEntry.EntityType.REFERENCE, saved.getId());
+        listings.invalidate();
         log.info("Updated reference: {} ({})", saved.getName(), saved.getId());
         
         return dtoMapper.toResponse(saved);
@@ -89,10 +151,12 @@ public class ReferenceService {
         
         // Delete logo file if exists
         if (reference.getLogoUrl() != null) {
-            fileStorageService.deleteFile(reference.getLogoUrl());
+            fileDeletionService.enqueue(reference.getLogoUrl());
         }
         
         referenceRepository.delete(reference);
+        changeLogService.recordDelete(ChangeLogEntry.EntityType.REFERENCE, reference.getId());
+        listings.invalidate();
         log.info("Deleted reference: {} ({})", reference.getName(), reference.getId());
     }
 }
@@ -0,0 +1,257 @@
+package com.emasmetal.service;
+
+import com.emasmetal.entity.ResumableUpload;
+import com.emasmetal.exception.ConflictException;
+import com.emasmetal.exception.FileStorageException;
+import com.emasmetal.exception.ResourceNotFoundException;
+import com.emasmetal.repository.ResumableUploadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uploads sent over several requests, modelled on the tus protocol: an upload is created with
+ * its total length, chunks are appended at the offset the server reports, and an interrupted
+ * client asks for the offset and continues from there. The finished file goes through
+ * {@link FileStorageService} like any other upload and is held until a contact message claims it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadService {
+
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+
+    private final ResumableUploadRepository resumableUploadRepository;
+    private final FileStorageService fileStorageService;
+    private final FileDeletionService fileDeletionService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.resumable.expiry:PT24H}")
+    private Duration expiry;
+
+    // Uploads currently receiving a chunk; a second concurrent PATCH would interleave writes
+    private final Set<UUID> receiving = ConcurrentHashMap.newKeySet();
+
+    public ResumableUpload create(String originalFilename, long uploadLength, String subDirectory) {
+        if (uploadLength <= 0) {
+            throw new IllegalArgumentException("Upload-Length must be positive");
+        }
+        String filename = fileStorageService.checkUpload(originalFilename, uploadLength, subDirectory);
+
+        ResumableUpload upload = resumableUploadRepository.save(ResumableUpload.builder()
+                .subDirectory(subDirectory)
+                .originalFilename(filename)
+                .uploadLength(uploadLength)
+                .build());
+
+        try {
+            Files.createFile(stagingFile(upload.getId()));
+        } catch (IOException e) {
+            resumableUploadRepository.delete(upload);
+            throw new FileStorageException("Could not create upload " + filename, e);
+        }
+
+        log.info("Created resumable upload {} for {} ({} bytes)", upload.getId(), filename, uploadLength);
+        return upload;
+    }
+
+    public ResumableUpload getUpload(UUID id) {
+        return resumableUploadRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Upload not found with id: " + id));
+    }
+
+    /**
+     * Appends one chunk at {@code offset}, which must match the offset the server has recorded.
+     * Whatever arrives before the connection drops is kept, so the client can resume from there.
+     *
+     * @return the upload after the chunk, completed if this was the last one
+     */
+    public ResumableUpload append(UUID id, long offset, long contentLength, InputStream body) {
+        if (!receiving.add(id)) {
+            throw new ConflictException("Upload " + id + " is already receiving a chunk");
+        }
+        try {
+            ResumableUpload upload = getUpload(id);
+            if (upload.isComplete()) {
+                throw new ConflictException("Upload " + id + " is already complete");
+            }
+            if (upload.getUploadOffset().equals(upload.getUploadLength())) {
+                // Every byte arrived but storing the file failed last time
+                return complete(upload);
+            }
+            if (offset != upload.getUploadOffset()) {
+                throw new ConflictException("Upload-Offset " + offset + " does not match current offset "
+                        + upload.getUploadOffset());
+            }
+            long remaining = upload.getUploadLength() - offset;
+            if (contentLength > remaining) {
+                throw new IllegalArgumentException("Chunk of " + contentLength + " bytes exceeds the "
+                        + remaining + " bytes remaining");
+            }
+
+            if (offset == 0) {
+                body = verifyHead(upload, remaining, body);
+            }
+            long newOffset = writeChunk(stagingFile(id), offset, remaining, body);
+            if (newOffset == offset) {
+                return upload;
+            }
+            resumableUploadRepository.updateOffset(id, newOffset);
+            upload.setUploadOffset(newOffset);
+            upload.setUpdatedAt(LocalDateTime.now());
+
+            if (newOffset == upload.getUploadLength()) {
+                return complete(upload);
+            }
+            return upload;
+        } finally {
+            receiving.remove(id);
+        }
+    }
+
+    /**
+     * Hands a finished upload over to the caller's transaction. The stored file's reference moves
+     * with it, so the upload row is removed rather than released.
+     */
+    @Transactional
+    public ResumableUpload claim(UUID id) {
+        ResumableUpload upload = getUpload(id);
+        if (!upload.isComplete() || resumableUploadRepository.deleteCompleted(id) == 0) {
+            throw new ConflictException("Upload " + id + " is not complete or has already been used");
+        }
+        return upload;
+    }
+
+    public void delete(UUID id) {
+        ResumableUpload upload = getUpload(id);
+        if (receiving.contains(id)) {
+            throw new ConflictException("Upload " + id + " is receiving a chunk");
+        }
+        discard(upload);
+    }
+
+    @Scheduled(fixedDelayString = "${file.resumable.cleanup-interval:PT1H}",
+            initialDelayString = "${file.resumable.cleanup-interval:PT1H}")
+    public void removeExpiredUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(expiry);
+        int removed = 0;
+        for (ResumableUpload upload : resumableUploadRepository.findByUpdatedAtBefore(cutoff)) {
+            if (receiving.contains(upload.getId())) {
+                continue;
+            }
+            try {
+                discard(upload);
+                removed++;
+            } catch (RuntimeException e) {
+                log.warn("Could not remove expired upload {}", upload.getId(), e);
+            }
+        }
+        if (removed > 0) {
+            log.info("Removed {} expired resumable uploads", removed);
+        }
+    }
+
+    public LocalDateTime expiresAt(ResumableUpload upload) {
+        LocalDateTime lastActivity = upload.getUpdatedAt() != null ? upload.getUpdatedAt() : LocalDateTime.now();
+        return lastActivity.plus(expiry);
+    }
+
+    /**
+     * Checks the leading bytes of the first chunk, so a mislabelled file is turned away before any
+     * of it is kept. A first chunk too short to judge is checked once the upload is complete.
+     */
+    private InputStream verifyHead(ResumableUpload upload, long remaining, InputStream body) {
+        int wanted = (int) Math.min(remaining, ContentSniffer.HEAD_BYTES);
+        byte[] head;
+        try {
+            head = body.readNBytes(wanted);
+        } catch (IOException e) {
+            // The client went away before anything was kept; it resumes from offset 0
+            return InputStream.nullInputStream();
+        }
+        if (head.length == wanted) {
+            fileStorageService.verifyContent(upload.getOriginalFilename(), head);
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(head), body);
+    }
+
+    private long writeChunk(Path file, long offset, long remaining, InputStream body) {
+        long position = offset;
+        try (FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Drops bytes written after the last recorded offset, e.g. by a request that died mid-update
+            target.truncate(offset);
+
+            ReadableByteChannel source = Channels.newChannel(body);
+            long limit = offset + remaining;
+            long transferred;
+            while (position < limit
+                    && (transferred = target.transferFrom(source, position,
+                            Math.min(TRANSFER_CHUNK_BYTES, limit - position))) > 0) {
+                position += transferred;
+            }
+        } catch (IOException e) {
+            // The client went away; keep what arrived so it can resume
+            log.info("Chunk for {} interrupted at offset {}: {}", file.getFileName(), position, e.getMessage());
+        }
+        return position;
+    }
+
+    private ResumableUpload complete(ResumableUpload upload) {
+        StagedFile staged = fileStorageService.adopt(
+                stagingFile(upload.getId()), upload.getOriginalFilename(), upload.getSubDirectory());
+
+        try {
+            String url = transactionTemplate.execute(status -> {
+                String storedUrl = fileStorageService.promote(staged);
+                upload.setStoredUrl(storedUrl);
+                resumableUploadRepository.save(upload);
+                return storedUrl;
+            });
+            log.info("Completed resumable upload {} -> {}", upload.getId(), url);
+            return upload;
+        } catch (RuntimeException e) {
+            upload.setStoredUrl(null);
+            throw e;
+        }
+    }
+
+    private void discard(ResumableUpload upload) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Only release the file if this call removed the row; a claim may have taken it over
+            if (resumableUploadRepository.removeById(upload.getId()) > 0 && upload.isComplete()) {
+                fileDeletionService.enqueue(upload.getStoredUrl());
+            }
+        });
+        try {
+            Files.deleteIfExists(stagingFile(upload.getId()));
+        } catch (IOException e) {
+            log.warn("Could not delete staging file for upload {}", upload.getId(), e);
+        }
+        log.info("Removed resumable upload {}", upload.getId());
+    }
+
+    private Path stagingFile(UUID id) {
+        return fileStorageService.getStagingDirectory().resolve(id + ".part");
+    }
+}
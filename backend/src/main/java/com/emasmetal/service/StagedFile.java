@@ -0,0 +1,30 @@
+package com.emasmetal.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An upload that has been validated and written to a temporary file in the staging
+ * directory, but is not yet referenced by anything. {@link FileStorageService#promote} turns it
+ * into a stored file; otherwise it must be {@linkplain #discard() discarded}.
+ */
+@Slf4j
+public record StagedFile(
+        Path tempFile,
+        String subDirectory,
+        String originalFilename,
+        String extension,
+        String digest,
+        long size) {
+    
+    public void discard() {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("Could not delete staged file: {}", tempFile, e);
+        }
+    }
+}
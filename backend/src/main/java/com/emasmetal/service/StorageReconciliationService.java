@@ -0,0 +1,314 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.StorageDto;
+import com.emasmetal.exception.ConflictException;
+import com.emasmetal.storage.ContentCoding;
+import com.emasmetal.storage.StoredObject;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Finds upload files that no row points at and rows that point at missing files. File deletes
+ * happen inside request transactions, so a rollback or crash can leave either kind behind.
+ *
+ * <p>The referenced URLs are streamed out of the database into sorted arrays of 64-bit hashes,
+ * the stored files are listed (in parallel where the storage backend allows) and checked against
+ * them, and a second pass over
+ * the database reports the references whose files were not seen. Memory stays at a few bytes per
+ * reference regardless of how many rows and files there are.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StorageReconciliationService {
+
+    private static final Pattern VARIANT_SUFFIX = Pattern.compile("_w\\d+$");
+    private static final int MAX_DANGLING_SAMPLES = 100;
+
+    private enum Mode { QUARANTINE, DELETE, REPORT }
+
+    private final FileStorageService fileStorageService;
+    private final FileReferenceScanner fileReferenceScanner;
+
+    @Value("${file.reconcile.directories:gallery,logos,attachments}")
+    private String directoriesStr;
+
+    @Value("${file.reconcile.mode:quarantine}")
+    private String modeStr;
+
+    @Value("${file.reconcile.grace-period:PT24H}")
+    private Duration gracePeriod;
+
+    @Value("${file.reconcile.quarantine-retention:P30D}")
+    private Duration quarantineRetention;
+
+    private List<String> directories;
+    private Mode mode;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        this.directories = Arrays.stream(directoriesStr.split(",")).map(String::trim).toList();
+        this.mode = Mode.valueOf(modeStr.trim().toUpperCase());
+    }
+
+    @Scheduled(cron = "${file.reconcile.cron:0 30 3 * * *}")
+    public void scheduledReconcile() {
+        try {
+            reconcile(false);
+        } catch (ConflictException e) {
+            log.info("Skipping scheduled storage reconciliation: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param dryRun only report what would be removed, whatever the configured mode
+     */
+    public StorageDto.ReconcileReport reconcile(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            throw new ConflictException("A storage reconciliation is already running");
+        }
+        try {
+            return run(dryRun ? Mode.REPORT : mode);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private StorageDto.ReconcileReport run(Mode runMode) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long started = System.nanoTime();
+        Instant cutoff = Instant.now().minus(gracePeriod);
+
+        // Pass 1: everything the database points at
+        LongSetBuilder keyBuilder = new LongSetBuilder();
+        LongSetBuilder stemBuilder = new LongSetBuilder();
+        LongAdder referencedUrls = new LongAdder();
+        fileReferenceScanner.forEachReference(reference -> {
+            String key = FileStorageService.toStorageKey(reference.url());
+            keyBuilder.add(hash(key));
+            stemBuilder.add(hash(stemOf(key)));
+            if (FileStorageService.isFlatKey(key)) {
+                // Not rewritten yet, but the layout migration may already have moved the file
+                String sharded = FileStorageService.shardedKey(key);
+                keyBuilder.add(hash(sharded));
+                stemBuilder.add(hash(stemOf(sharded)));
+            }
+            referencedUrls.increment();
+        });
+        long[] referencedKeys = keyBuilder.build();
+        long[] referencedStems = stemBuilder.build();
+
+        // Pass 2: the stored files, checked against those sets
+        Scan scan = new Scan(runMode, cutoff, referencedKeys, referencedStems);
+        CompletableFuture.allOf(directories.stream()
+                .map(directory -> fileStorageService.listFiles(directory, scan::scanFile))
+                .toArray(CompletableFuture[]::new)).join();
+        long removedTemp = runMode == Mode.REPORT ? 0 : removeStaleStagingFiles(cutoff);
+
+        // Pass 3: references whose file was not found in storage
+        List<StorageDto.DanglingReference> samples = Collections.synchronizedList(new ArrayList<>());
+        LongAdder dangling = new LongAdder();
+        fileReferenceScanner.forEachReference(reference -> {
+            String key = FileStorageService.toStorageKey(reference.url());
+            if (!directories.contains(FileStorageService.categoryOf(key))) {
+                return;
+            }
+            int index = Arrays.binarySearch(referencedKeys, hash(key));
+            // Re-check rows written after the walk passed their directory
+            if (!scan.isSeen(index) && !fileStorageService.exists(reference.url())) {
+                dangling.increment();
+                if (samples.size() < MAX_DANGLING_SAMPLES) {
+                    samples.add(StorageDto.DanglingReference.builder()
+                            .table(reference.table())
+                            .id(reference.id())
+                            .url(reference.url())
+                            .build());
+                }
+            }
+        });
+        samples.forEach(sample -> log.warn("Dangling file reference: {} {} -> {}",
+                sample.getTable(), sample.getId(), sample.getUrl()));
+
+        long purged = runMode == Mode.REPORT ? 0 : fileStorageService.purgeQuarantine(Instant.now().minus(quarantineRetention));
+
+        StorageDto.ReconcileReport report = StorageDto.ReconcileReport.builder()
+                .mode(runMode.name().toLowerCase())
+                .startedAt(startedAt)
+                .durationMs(Duration.ofNanos(System.nanoTime() - started).toMillis())
+                .referencedUrls(referencedUrls.sum())
+                .filesScanned(scan.filesScanned.sum())
+                .unreferencedFiles(scan.unreferenced.sum())
+                .skippedRecentFiles(scan.skippedRecent.sum())
+                .removedFiles(scan.removed.sum())
+                .removedTempFiles(removedTemp)
+                .purgedQuarantineFiles(purged)
+                .danglingReferences(dangling.sum())
+                .danglingSamples(samples)
+                .build();
+
+        log.info("Storage reconciliation ({}): {} files scanned, {} referenced URLs, {} unreferenced "
+                        + "({} removed, {} within grace period), {} dangling references in {} ms",
+                report.getMode(), report.getFilesScanned(), report.getReferencedUrls(), report.getUnreferencedFiles(),
+                report.getRemovedFiles(), report.getSkippedRecentFiles(), report.getDanglingReferences(),
+                report.getDurationMs());
+        return report;
+    }
+
+    /**
+     * Temp files of uploads and downloads interrupted by a crash. Resumable uploads ({@code .part})
+     * are left to {@link ResumableUploadService}, which knows whether they are still active.
+     */
+    private long removeStaleStagingFiles(Instant cutoff) {
+        long removed = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(fileStorageService.getStagingDirectory(), ".*.tmp")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff) && Files.deleteIfExists(file)) {
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not delete temporary file {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not scan staging directory", e);
+        }
+        return removed;
+    }
+
+    /**
+     * {@code gallery/<digest>_w640.jpg} and {@code gallery/<digest>.png} share the stem
+     * {@code gallery/<digest>}: variants are kept for as long as their original is referenced.
+     */
+    private static String stemOf(String key) {
+        int slash = key.lastIndexOf('/');
+        int dot = key.lastIndexOf('.');
+        String stem = dot > slash ? key.substring(0, dot) : key;
+        return VARIANT_SUFFIX.matcher(stem).replaceFirst("");
+    }
+
+    /**
+     * 64-bit FNV-1a with a SplitMix64 finaliser. A collision can only keep an orphan or hide a
+     * dangling reference, never remove a referenced file.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * State shared by the directory tasks of one run.
+     */
+    private final class Scan {
+
+        private final Mode mode;
+        private final Instant cutoff;
+        private final long[] referencedKeys;
+        private final long[] referencedStems;
+        private final AtomicLongArray seen;
+
+        private final LongAdder filesScanned = new LongAdder();
+        private final LongAdder unreferenced = new LongAdder();
+        private final LongAdder skippedRecent = new LongAdder();
+        private final LongAdder removed = new LongAdder();
+
+        Scan(Mode mode, Instant cutoff, long[] referencedKeys, long[] referencedStems) {
+            this.mode = mode;
+            this.cutoff = cutoff;
+            this.referencedKeys = referencedKeys;
+            this.referencedStems = referencedStems;
+            this.seen = new AtomicLongArray((referencedKeys.length + 63) / 64);
+        }
+
+        void scanFile(StoredObject file) {
+            filesScanned.increment();
+            boolean recent = file.lastModified().isAfter(cutoff);
+
+            // Compressed files are referenced by their plain key
+            String key = ContentCoding.plainKey(file.key());
+            int index = Arrays.binarySearch(referencedKeys, hash(key));
+            if (index >= 0) {
+                markSeen(index);
+                return;
+            }
+            if (Arrays.binarySearch(referencedStems, hash(stemOf(key))) >= 0) {
+                return;
+            }
+
+            unreferenced.increment();
+            if (recent) {
+                skippedRecent.increment();
+                return;
+            }
+            if (mode != Mode.REPORT && fileStorageService.removeOrphan(file.key(), cutoff, mode == Mode.QUARANTINE)) {
+                removed.increment();
+            }
+        }
+
+        boolean isSeen(int index) {
+            return index >= 0 && (seen.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        private void markSeen(int index) {
+            long bit = 1L << index;
+            seen.getAndAccumulate(index >>> 6, bit, (current, mask) -> current | mask);
+        }
+    }
+
+    /**
+     * Growable array of hashes, sorted and de-duplicated on {@link #build()}.
+     */
+    private static final class LongSetBuilder {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] build() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+    }
+}
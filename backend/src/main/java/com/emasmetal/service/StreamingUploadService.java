@@ -0,0 +1,142 @@
+package com.emasmetal.service;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Parses multipart requests incrementally instead of going through Spring's multipart resolver,
+ * which would first buffer the whole body to a temp file. The JSON {@code data} part is bound and
+ * validated; the file part is streamed straight into {@link FileStorageService#stage}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StreamingUploadService {
+
+    private static final String DATA_PART = "data";
+    private static final int MAX_DATA_PART_BYTES = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${file.max-request-size:26214400}")
+    private long maxRequestSize;
+
+    /**
+     * The bound {@code data} part and the staged file, if one was sent. Closing discards the
+     * staged file unless it has been promoted in the meantime.
+     */
+    public record ParsedUpload<T>(T data, StagedFile file) implements AutoCloseable {
+
+        @Override
+        public void close() {
+            if (file != null) {
+                file.discard();
+            }
+        }
+    }
+
+    public <T> ParsedUpload<T> parse(HttpServletRequest request, Class<T> dataType,
+                                     String filePartName, String subDirectory) {
+        // Not JakartaServletFileUpload.isMultipartContent, which rejects everything but POST
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            throw new IllegalArgumentException("Request must be multipart/form-data");
+        }
+
+        JakartaServletFileUpload<?, ?> upload = new JakartaServletFileUpload<>();
+        upload.setSizeMax(maxRequestSize);
+
+        T data = null;
+        StagedFile file = null;
+        try {
+            FileItemInputIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+
+                if (DATA_PART.equals(item.getFieldName())) {
+                    data = readData(item, dataType);
+                } else if (filePartName.equals(item.getFieldName()) && file == null
+                        && item.getName() != null && !item.getName().isBlank()) {
+                    file = stageFile(item, subDirectory);
+                }
+                // Any other part is skipped by the iterator
+            }
+        } catch (FileUploadSizeException e) {
+            discard(file);
+            throw new MaxUploadSizeExceededException(maxRequestSize, e);
+        } catch (FileUploadException e) {
+            discard(file);
+            throw new IllegalArgumentException("Malformed multipart request", e);
+        } catch (IOException e) {
+            discard(file);
+            throw new IllegalArgumentException("Could not read upload: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            discard(file);
+            throw e;
+        }
+
+        if (data == null) {
+            discard(file);
+            throw new IllegalArgumentException("Required part '" + DATA_PART + "' is missing");
+        }
+
+        Set<ConstraintViolation<T>> violations = validator.validate(data);
+        if (!violations.isEmpty()) {
+            discard(file);
+            throw new ConstraintViolationException(violations);
+        }
+
+        return new ParsedUpload<>(data, file);
+    }
+
+    private <T> T readData(FileItemInput item, Class<T> dataType) throws IOException {
+        try (InputStream in = item.getInputStream()) {
+            byte[] json = in.readNBytes(MAX_DATA_PART_BYTES + 1);
+            if (json.length > MAX_DATA_PART_BYTES) {
+                throw new IllegalArgumentException("Part '" + DATA_PART + "' is too large");
+            }
+            return objectMapper.readValue(json, dataType);
+        } catch (JacksonException e) {
+            throw new IllegalArgumentException("Part '" + DATA_PART + "' is not valid JSON", e);
+        }
+    }
+
+    private StagedFile stageFile(FileItemInput item, String subDirectory) throws IOException {
+        StagedFile staged = fileStorageService.stage(
+                item.getInputStream(), item.getName(), item.getContentType(), subDirectory);
+
+        // An empty file input is treated as "no file", as MultipartFile.isEmpty() was
+        if (staged.size() == 0) {
+            staged.discard();
+            return null;
+        }
+        return staged;
+    }
+
+    private static void discard(StagedFile file) {
+        if (file != null) {
+            file.discard();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.emasmetal.service;
+
+import com.emasmetal.repository.GalleryItemRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ThumbnailService {
+    
+    private final ImageProcessingService imageProcessingService;
+    private final FileStorageService fileStorageService;
+    private final GalleryService galleryService;
+    private final GalleryItemRepository galleryItemRepository;
+    private final MeterRegistry meterRegistry;
+    
+    @Qualifier("imageTaskExecutor")
+    private final TaskExecutor imageTaskExecutor;
+    
+    @Value("${image.variant-widths:320,640,1280}")
+    private String variantWidthsStr;
+    
+    @Value("${image.jpeg-quality:0.82}")
+    private float jpegQuality;
+    
+    private List<Integer> variantWidths;
+    private Counter rejectedTasks;
+    
+    private record VariantTask(UUID itemId, String imageUrl) {}
+    
+    // Queued or running, so the backfill does not queue the same work twice
+    private final Set<VariantTask> pendingTasks = ConcurrentHashMap.newKeySet();
+    
+    @PostConstruct
+    public void init() {
+        // Largest first, so every variant is downscaled from the previous one
+        this.variantWidths = Arrays.stream(variantWidthsStr.split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        this.rejectedTasks = Counter.builder("image.variants.rejected")
+                .description("Variant tasks turned away by a full image queue")
+                .register(meterRegistry);
+    }
+    
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onGalleryImageStored(GalleryImageStoredEvent event) {
+        submit(new VariantTask(event.itemId(), event.imageUrl()));
+    }
+    
+    /**
+     * Queues the gallery items that have no variants yet: ones whose task found the queue full or
+     * was lost to a restart, and ones that failed for a reason that may have gone away.
+     */
+    @Scheduled(fixedDelayString = "${image.backfill-interval:PT5M}", initialDelayString = "PT10S")
+    public void backfillMissingVariants() {
+        List<VariantTask> tasks = galleryItemRepository.findByImageVariantsIsNullAndImageUrlStartingWith("/uploads/")
+                .stream()
+                .map(item -> new VariantTask(item.getId(), item.getImageUrl()))
+                .filter(task -> !pendingTasks.contains(task))
+                .toList();
+        if (tasks.isEmpty()) {
+            return;
+        }
+        log.info("Queueing variant generation for {} gallery items", tasks.size());
+        for (VariantTask task : tasks) {
+            if (!submit(task)) {
+                // The rest waits for the next run
+                break;
+            }
+        }
+    }
+    
+    // Never runs the task on the caller, which may be a request thread in a transaction's after-commit phase
+    private boolean submit(VariantTask task) {
+        if (!pendingTasks.add(task)) {
+            return true;
+        }
+        try {
+            imageTaskExecutor.execute(() -> {
+                try {
+                    generateVariants(task.itemId(), task.imageUrl());
+                } finally {
+                    pendingTasks.remove(task);
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            pendingTasks.remove(task);
+            rejectedTasks.increment();
+            log.warn("Image worker queue is full, leaving gallery item {} to the backfill", task.itemId());
+            return false;
+        }
+    }
+    
+    public static String variantUrl(String imageUrl, int width, String extension) {
+        int dotIndex = imageUrl.lastIndexOf('.');
+        String base = dotIndex > imageUrl.lastIndexOf('/') ? imageUrl.substring(0, dotIndex) : imageUrl;
+        return base + "_w" + width + "." + extension;
+    }
+    
+    private void generateVariants(UUID itemId, String imageUrl) {
+        Map<Integer, String> variants;
+        try {
+            variants = renderVariants(imageUrl);
+        } catch (ImageProcessingService.UnreadableImageException e) {
+            // Recorded as having no variants, so the backfill does not pick it up again
+            log.warn("Gallery item {} has an image that cannot be decoded ({}): {}", itemId, imageUrl, e.getMessage());
+            variants = Map.of();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not generate variants for gallery item {} ({})", itemId, imageUrl, e);
+            return;
+        }
+        
+        galleryService.applyImageVariants(itemId, imageUrl, variants, thumbnailUrl(imageUrl, variants));
+    }
+    
+    /**
+     * Renders and stores the downscaled variants of a stored original. Nothing is left behind
+     * when it fails.
+     *
+     * @return variant URLs by width, narrowest first; empty for originals no wider than the smallest variant
+     */
+    public Map<Integer, String> renderVariants(String imageUrl) throws IOException {
+        Map<Integer, String> variants = new TreeMap<>();
+        try {
+            ImageProcessingService.DecodedImage decoded = fileStorageService.withLocalFile(imageUrl,
+                    file -> imageProcessingService.decode(file, variantWidths.get(0), 0));
+            String format = imageProcessingService.outputFormat(decoded.format());
+            String extension = imageProcessingService.extensionFor(format);
+            
+            BufferedImage current = decoded.image();
+            for (int width : variantWidths) {
+                // Never upscale: small originals simply get fewer variants
+                if (width >= decoded.width()) {
+                    continue;
+                }
+                BufferedImage variant = imageProcessingService.resizeToWidth(current, width);
+                String variantUrl = variantUrl(imageUrl, width, extension);
+                fileStorageService.storeDerived(variantUrl,
+                        target -> imageProcessingService.write(variant, format, jpegQuality, target));
+                current = variant;
+                variants.put(width, variantUrl);
+            }
+        } catch (IOException | RuntimeException e) {
+            variants.values().forEach(fileStorageService::deleteFile);
+            throw e;
+        }
+        return variants;
+    }
+    
+    public static String thumbnailUrl(String imageUrl, Map<Integer, String> variants) {
+        return variants.isEmpty() ? imageUrl : variants.values().iterator().next();
+    }
+}
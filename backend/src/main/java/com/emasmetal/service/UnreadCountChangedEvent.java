@@ -0,0 +1,7 @@
+package com.emasmetal.service;
+
+/**
+ * Published when a transaction changes the number of unread contact messages by {@code delta};
+ * the in-memory count follows after commit.
+ */
+public record UnreadCountChangedEvent(long delta) {}
@@ -0,0 +1,196 @@
+package com.emasmetal.service;
+
+import com.emasmetal.repository.ContactMessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of unread contact messages, held in memory so that reading it never touches the
+ * database. Committed changes are applied as {@link UnreadCountChangedEvent}s and pushed to every
+ * open event stream; a periodic recount corrects anything else, such as changes made by another
+ * replica.
+ *
+ * <p>A recount is only stored if no change on this instance was in flight from before the count
+ * until the store. A change that commits before the count but applies its delta afterwards would
+ * otherwise be counted twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UnreadCountService {
+
+    private static final String EVENT_NAME = "unread-count";
+
+    private final ContactMessageRepository contactMessageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Qualifier("applicationTaskExecutor")
+    private final TaskExecutor taskExecutor;
+
+    @Value("${app.unread-count.stream-timeout:PT30M}")
+    private Duration streamTimeout;
+
+    private final AtomicLong unreadCount = new AtomicLong();
+    // Guards the two change counters and applying deltas, so a recount can tell whether it raced a change
+    private final Object changeLock = new Object();
+    private long changesStarted;
+    private long changesInFlight;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean broadcasting = new AtomicBoolean();
+    private final AtomicBoolean broadcastRequested = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        unreadCount.set(contactMessageRepository.countByIsReadFalse());
+        Gauge.builder("contact.messages.unread", unreadCount, AtomicLong::get)
+                .description("Unread contact messages")
+                .register(meterRegistry);
+    }
+
+    public long getUnreadCount() {
+        return unreadCount.get();
+    }
+
+    /**
+     * A stream of {@code unread-count} events, starting with the current count.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        send(emitter, unreadCount.get());
+        return emitter;
+    }
+
+    /**
+     * Applies the delta once the publishing transaction commits, or right away outside of one.
+     * Delivered at publish time, i.e. before the change can be visible to a recount.
+     */
+    @EventListener
+    public void onUnreadCountChanged(UnreadCountChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (changeLock) {
+                changesStarted++;
+                unreadCount.addAndGet(event.delta());
+            }
+            requestBroadcast();
+            return;
+        }
+        synchronized (changeLock) {
+            changesStarted++;
+            changesInFlight++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                boolean committed = status == STATUS_COMMITTED;
+                synchronized (changeLock) {
+                    if (committed) {
+                        unreadCount.addAndGet(event.delta());
+                    }
+                    changesInFlight--;
+                }
+                if (committed) {
+                    requestBroadcast();
+                }
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.unread-count.resync-interval:PT1M}",
+            initialDelayString = "${app.unread-count.resync-interval:PT1M}")
+    public void resync() {
+        long startedBefore;
+        synchronized (changeLock) {
+            if (changesInFlight > 0) {
+                log.debug("Unread message count is changing, retrying the resync on the next run");
+                return;
+            }
+            startedBefore = changesStarted;
+        }
+        long counted = contactMessageRepository.countByIsReadFalse();
+        long previous;
+        synchronized (changeLock) {
+            // A change that started meanwhile may or may not be in the count
+            if (changesStarted != startedBefore) {
+                log.debug("Unread message count changed while resyncing, retrying on the next run");
+                return;
+            }
+            previous = unreadCount.getAndSet(counted);
+        }
+        if (previous != counted) {
+            log.info("Unread message count resynced from {} to {}", previous, counted);
+            requestBroadcast();
+        }
+    }
+
+    // Repeating the count keeps idle streams from being closed by proxies
+    @Scheduled(fixedDelayString = "${app.unread-count.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        if (!emitters.isEmpty()) {
+            requestBroadcast();
+        }
+    }
+
+    @PreDestroy
+    public void closeStreams() {
+        emitters.forEach(SseEmitter::complete);
+    }
+
+    // Sending happens off the committing thread; requests arriving meanwhile are folded into one
+    private void requestBroadcast() {
+        broadcastRequested.set(true);
+        if (broadcasting.compareAndSet(false, true)) {
+            taskExecutor.execute(this::broadcast);
+        }
+    }
+
+    private void broadcast() {
+        try {
+            while (broadcastRequested.getAndSet(false)) {
+                long count = unreadCount.get();
+                for (SseEmitter emitter : emitters) {
+                    send(emitter, count);
+                }
+            }
+        } finally {
+            broadcasting.set(false);
+        }
+        // A request that arrived after the last check but before the flag was cleared
+        if (broadcastRequested.get()) {
+            requestBroadcast();
+        }
+    }
+
+    private void send(SseEmitter emitter, long count) {
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(Map.of("unreadCount", count)));
+        } catch (IOException | IllegalStateException e) {
+            // Gone or already completed; the container finishes it off
+            emitters.remove(emitter);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.StorageDto;
+import com.emasmetal.exception.ConflictException;
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.emasmetal.repository.ResumableUploadRepository;
+import com.emasmetal.storage.StoredObject;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves uploads from the flat layout ({@code attachments/<name>}) to the sharded one
+ * ({@code attachments/ab/cd/<name>}), see {@link FileStorageService#shardedKey}.
+ *
+ * <p>Files are moved first, in parallel. The stored URLs are rewritten afterwards in batches,
+ * each in its own transaction, so an interrupted run is simply finished by starting it again.
+ * Until a URL has been rewritten it keeps resolving through the flat-key fallback of
+ * {@link FileStorageService}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadLayoutMigrationService {
+
+    private static final String UPLOADS_PREFIX = "/uploads/";
+
+    private final FileStorageService fileStorageService;
+    private final FileReferenceScanner fileReferenceScanner;
+    private final GalleryItemRepository galleryItemRepository;
+    private final ReferenceRepository referenceRepository;
+    private final ContactMessageRepository contactMessageRepository;
+    private final ResumableUploadRepository resumableUploadRepository;
+    private final GalleryService galleryService;
+    private final ReferenceService referenceService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${file.layout-migration.directories:gallery,logos,attachments}")
+    private String directoriesStr;
+
+    @Value("${file.layout-migration.threads:4}")
+    private int threads;
+
+    @Value("${file.layout-migration.batch-size:500}")
+    private int batchSize;
+
+    private List<String> directories;
+    private TransactionTemplate batchTransaction;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        this.directories = Arrays.stream(directoriesStr.split(",")).map(String::trim).toList();
+        // Batches commit on their own while the reference scan keeps its read-only cursor open
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public StorageDto.LayoutMigrationReport migrate() {
+        if (!running.compareAndSet(false, true)) {
+            throw new ConflictException("An upload layout migration is already running");
+        }
+        try {
+            return run();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private StorageDto.LayoutMigrationReport run() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long started = System.nanoTime();
+
+        // Phase 1: move the files still stored flat
+        LongAdder moved = new LongAdder();
+        LongAdder failed = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // Listing is much faster than moving; keep the backlog of queued moves bounded
+        Semaphore inFlight = new Semaphore(threads * 4);
+        try {
+            CompletableFuture.allOf(directories.stream()
+                    .map(directory -> fileStorageService.listFiles(directory, file -> {
+                        if (!FileStorageService.isFlatKey(file.key())) {
+                            return;
+                        }
+                        inFlight.acquireUninterruptibly();
+                        pool.execute(() -> {
+                            try {
+                                relocate(file, moved, failed);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }))
+                    .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            pool.shutdown();
+            awaitTermination(pool);
+        }
+
+        // Phase 2: point the URLs at the new keys
+        LongAdder rewritten = new LongAdder();
+        Map<String, String> pending = new LinkedHashMap<>();
+        fileReferenceScanner.forEachReference(reference -> {
+            String key = FileStorageService.toStorageKey(reference.url());
+            if (!FileStorageService.isFlatKey(key) || !directories.contains(FileStorageService.categoryOf(key))) {
+                return;
+            }
+            // Failed, or written after the listing passed by: rewritten once the file has moved
+            if (fileStorageService.isStoredAt(key)) {
+                return;
+            }
+            pending.put(reference.url(), UPLOADS_PREFIX + FileStorageService.shardedKey(key));
+            if (pending.size() >= batchSize) {
+                rewritten.add(rewrite(pending));
+                pending.clear();
+            }
+        });
+        rewritten.add(rewrite(pending));
+
+        StorageDto.LayoutMigrationReport report = StorageDto.LayoutMigrationReport.builder()
+                .startedAt(startedAt)
+                .durationMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started))
+                .filesMoved(moved.sum())
+                .failedMoves(failed.sum())
+                .rowsUpdated(rewritten.sum())
+                .build();
+        log.info("Upload layout migration finished: {} files moved, {} failed, {} rows updated in {} ms",
+                report.getFilesMoved(), report.getFailedMoves(), report.getRowsUpdated(), report.getDurationMs());
+        return report;
+    }
+
+    private void relocate(StoredObject file, LongAdder moved, LongAdder failed) {
+        try {
+            fileStorageService.relocate(file.key());
+            moved.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.warn("Could not move {} to the sharded layout", file.key(), e);
+        }
+    }
+
+    private long rewrite(Map<String, String> urls) {
+        if (urls.isEmpty()) {
+            return 0;
+        }
+        String[] oldUrls = urls.keySet().toArray(String[]::new);
+        String[] newUrls = urls.values().toArray(String[]::new);
+        Integer rows = batchTransaction.execute(status -> {
+            galleryService.evictCachedListings();
+            referenceService.evictCachedListings();
+            return galleryItemRepository.rewriteFileUrls(oldUrls, newUrls)
+                    + referenceRepository.rewriteLogoUrls(oldUrls, newUrls)
+                    + contactMessageRepository.rewriteAttachmentUrls(oldUrls, newUrls)
+                    + resumableUploadRepository.rewriteStoredUrls(oldUrls, newUrls);
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private static void awaitTermination(ExecutorService pool) {
+        try {
+            pool.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.emasmetal.storage;
+
+import com.emasmetal.service.DiskLruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Read-through disk cache in front of a remote store. The first read of an object downloads it
+ * in full; later reads, including byte ranges, are served from the local copy.
+ *
+ * <p>Stored keys are content-addressed or derived from one, so a cached copy can only go stale
+ * when the object is removed. Metadata therefore always comes from the remote store, and a file
+ * deleted by another replica stops being served even while a copy is still cached here.
+ */
+public class CachingStorageBackend implements StorageBackend {
+
+    private final StorageBackend delegate;
+    private final DiskLruCache cache;
+    private final Executor executor;
+
+    public CachingStorageBackend(StorageBackend delegate, DiskLruCache cache, Executor executor) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path source) {
+        cache.remove(key);
+        return delegate.put(key, source);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key, long offset, long length) {
+        // Opened while the entry is leased, so eviction cannot delete it in between
+        return AsyncIo.supply(() -> {
+            try (DiskLruCache.Lease file = cache.acquire(key, target -> download(key, target))) {
+                return AsyncIo.openRange(file.path(), offset, length);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<StoredObject>> stat(String key) {
+        return delegate.stat(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        cache.remove(key);
+        return delegate.delete(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> move(String sourceKey, String targetKey) {
+        cache.remove(sourceKey);
+        cache.remove(targetKey);
+        return delegate.move(sourceKey, targetKey);
+    }
+
+    @Override
+    public CompletableFuture<Void> list(String prefix, Consumer<StoredObject> consumer) {
+        return delegate.list(prefix, consumer);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Path>> localFile(String key) {
+        return AsyncIo.supply(() -> Optional.of(cache.getOrCompute(key, target -> download(key, target))), executor);
+    }
+
+    private void download(String key, Path target) throws IOException {
+        try (InputStream in = StorageBackend.join(delegate.get(key))) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,102 @@
+package com.emasmetal.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression applied to a stored object. A compressed object is stored under its plain key with
+ * the coding's suffix ({@code attachments/ab/cd/<sha256>.dxf.gz}); the names match the HTTP
+ * {@code Content-Encoding} tokens, so the stored bytes can be sent as they are.
+ */
+public enum ContentCoding {
+
+    GZIP("gzip", ".gz", "application/gzip"),
+    ZSTD("zstd", ".zst", "application/zstd");
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final String token;
+    private final String suffix;
+    private final String mediaType;
+
+    ContentCoding(String token, String suffix, String mediaType) {
+        this.token = token;
+        this.suffix = suffix;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * The {@code Content-Encoding} token.
+     */
+    public String token() {
+        return token;
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+
+    /**
+     * Media type of the compressed bytes as a file of their own.
+     */
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public OutputStream encode(OutputStream out) throws IOException {
+        return switch (this) {
+            case GZIP -> new GZIPOutputStream(out, BUFFER_BYTES);
+            case ZSTD -> new ZstdOutputStream(out);
+        };
+    }
+
+    public InputStream decode(InputStream in) throws IOException {
+        return switch (this) {
+            case GZIP -> new GZIPInputStream(in, BUFFER_BYTES);
+            case ZSTD -> new ZstdInputStream(in);
+        };
+    }
+
+    /**
+     * @param name {@code gzip}, {@code zstd} or {@code identity} (no compression, empty)
+     */
+    public static Optional<ContentCoding> parse(String name) {
+        String token = name.trim().toLowerCase(Locale.ROOT);
+        if (token.equals("identity")) {
+            return Optional.empty();
+        }
+        for (ContentCoding coding : values()) {
+            if (coding.token.equals(token)) {
+                return Optional.of(coding);
+            }
+        }
+        throw new IllegalArgumentException("Unknown content coding: " + name);
+    }
+
+    /**
+     * The coding a stored key was compressed with, judged by its suffix.
+     */
+    public static Optional<ContentCoding> ofKey(String key) {
+        for (ContentCoding coding : values()) {
+            if (key.endsWith(coding.suffix)) {
+                return Optional.of(coding);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The plain key of a stored key, without any coding suffix.
+     */
+    public static String plainKey(String key) {
+        return ofKey(key).map(coding -> key.substring(0, key.length() - coding.suffix.length())).orElse(key);
+    }
+}
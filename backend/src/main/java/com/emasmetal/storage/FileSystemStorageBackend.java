@@ -0,0 +1,170 @@
+package com.emasmetal.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Objects are plain files below a root directory. Blocking file I/O runs on the given executor;
+ * listings walk the tree with one fork/join task per directory.
+ */
+@Slf4j
+public class FileSystemStorageBackend implements StorageBackend {
+
+    private final Path root;
+    private final Executor executor;
+    private final int listThreads;
+
+    public FileSystemStorageBackend(Path root, Executor executor, int listThreads) {
+        this.root = root.toAbsolutePath().normalize();
+        this.executor = executor;
+        this.listThreads = listThreads;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path source) {
+        return AsyncIo.supply(() -> {
+            Path target = resolve(key);
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                // Source on another file system: copy next to the target, then rename
+                Path temp = Files.createTempFile(target.getParent(), ".put-", ".tmp");
+                try {
+                    Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                Files.delete(source);
+            }
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key, long offset, long length) {
+        return AsyncIo.supply(() -> AsyncIo.openRange(resolve(key), offset, length), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<StoredObject>> stat(String key) {
+        return AsyncIo.supply(() -> {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+                return attributes.isRegularFile() ? Optional.of(toObject(key, attributes)) : Optional.empty();
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        return AsyncIo.supply(() -> {
+            Files.deleteIfExists(resolve(key));
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> move(String sourceKey, String targetKey) {
+        return AsyncIo.supply(() -> {
+            Path target = resolve(targetKey);
+            Files.createDirectories(target.getParent());
+            Files.move(resolve(sourceKey), target, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> list(String prefix, Consumer<StoredObject> consumer) {
+        return AsyncIo.supply(() -> {
+            Path directory = resolve(prefix);
+            if (Files.isDirectory(directory)) {
+                ForkJoinPool pool = new ForkJoinPool(listThreads);
+                try {
+                    pool.invoke(new DirectoryScan(directory, consumer));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Path>> localFile(String key) {
+        Path file = resolve(key);
+        return CompletableFuture.completedFuture(Files.isRegularFile(file) ? Optional.of(file) : Optional.empty());
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Storage key outside the storage root: " + key);
+        }
+        return path;
+    }
+
+    private StoredObject toObject(String key, BasicFileAttributes attributes) {
+        return new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant(),
+                String.valueOf(attributes.fileKey()));
+    }
+
+    /**
+     * Lists one directory, forking a task per subdirectory.
+     */
+    private final class DirectoryScan extends RecursiveAction {
+
+        private final Path directory;
+        private final Consumer<StoredObject> consumer;
+
+        DirectoryScan(Path directory, Consumer<StoredObject> consumer) {
+            this.directory = directory;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (entry.getFileName().toString().startsWith(".")) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new DirectoryScan(entry, consumer));
+                    } else if (attributes.isRegularFile()) {
+                        String key = root.relativize(entry).toString().replace('\\', '/');
+                        consumer.accept(toObject(key, attributes));
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Could not list storage directory {}", directory, e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.emasmetal.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Spreads objects over several directories, typically one per disk. The default volume stores
+ * keys as they are; on any other volume the key starts with the volume id
+ * ({@code v2/gallery/ab/cd/<name>}), so reads go straight to the right disk. A hidden top-level
+ * directory stays on the volume named below it: {@code .quarantine/v2/gallery/...} is
+ * {@code .quarantine/gallery/...} on v2.
+ *
+ * <p>New objects go to a volume picked at random, weighted by its free space. Read-only volumes
+ * and volumes that would drop below the reserve are skipped.
+ */
+@Slf4j
+public class MultiVolumeStorageBackend implements StorageBackend {
+
+    private static final Pattern VOLUME_ID = Pattern.compile("^v\\d+$");
+
+    private record Volume(String id, Path root, StorageBackend backend) {}
+
+    private record Route(Volume volume, String key) {}
+
+    private final Volume defaultVolume;
+    private final Map<String, Volume> volumes = new LinkedHashMap<>();
+    private final long minFreeBytes;
+    private final double minFreeRatio;
+
+    /**
+     * @param extraRoots volume id ({@code v2}, {@code v3}, ...) to the directory it stores into
+     */
+    public MultiVolumeStorageBackend(Path defaultRoot, Map<String, Path> extraRoots, Executor executor,
+                                     int listThreads, long minFreeBytes, double minFreeRatio) {
+        this.defaultVolume = new Volume(null, defaultRoot,
+                new FileSystemStorageBackend(defaultRoot, executor, listThreads));
+        extraRoots.forEach((id, root) -> {
+            if (!isVolumeId(id)) {
+                throw new IllegalArgumentException("Volume ids look like v2, v3, ...: " + id);
+            }
+            volumes.put(id, new Volume(id, root, new FileSystemStorageBackend(root, executor, listThreads)));
+        });
+        this.minFreeBytes = minFreeBytes;
+        this.minFreeRatio = minFreeRatio;
+    }
+
+    /**
+     * Whether a key segment names a volume rather than a directory.
+     */
+    public static boolean isVolumeId(String segment) {
+        return VOLUME_ID.matcher(segment).matches();
+    }
+
+    @Override
+    public String place(String key, long size) throws IOException {
+        List<Volume> candidates = new ArrayList<>();
+        List<Long> weights = new ArrayList<>();
+        long total = 0;
+        for (Volume volume : allVolumes()) {
+            long room = roomFor(volume, size);
+            if (room > 0) {
+                candidates.add(volume);
+                weights.add(room);
+                total += room;
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IOException("No storage volume has room for " + size + " more bytes");
+        }
+
+        long pick = ThreadLocalRandom.current().nextLong(total);
+        for (int i = 0; i < candidates.size(); i++) {
+            pick -= weights.get(i);
+            if (pick < 0) {
+                return keyOn(candidates.get(i), key);
+            }
+        }
+        return keyOn(candidates.get(candidates.size() - 1), key);
+    }
+
+    @Override
+    public List<String> placements(String key) {
+        return allVolumes().stream().map(volume -> keyOn(volume, key)).toList();
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path source) {
+        Route route = route(key);
+        return route.volume().backend().put(route.key(), source);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key, long offset, long length) {
+        Route route = route(key);
+        return route.volume().backend().get(route.key(), offset, length);
+    }
+
+    @Override
+    public CompletableFuture<Optional<StoredObject>> stat(String key) {
+        Route route = route(key);
+        return route.volume().backend().stat(route.key()).thenApply(found -> found.map(object ->
+                new StoredObject(key, object.size(), object.lastModified(), object.version())));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        Route route = route(key);
+        return route.volume().backend().delete(route.key());
+    }
+
+    @Override
+    public CompletableFuture<Void> move(String sourceKey, String targetKey) {
+        Route source = route(sourceKey);
+        Route target = route(targetKey);
+        if (source.volume() != target.volume()) {
+            return CompletableFuture.failedFuture(
+                    new IOException("Cannot move " + sourceKey + " to another volume: " + targetKey));
+        }
+        return source.volume().backend().move(source.key(), target.key());
+    }
+
+    @Override
+    public CompletableFuture<Void> list(String prefix, Consumer<StoredObject> consumer) {
+        Route route = route(prefix);
+        // A prefix without a volume id covers that directory on every volume
+        List<Volume> listed = route.volume() == defaultVolume ? allVolumes() : List.of(route.volume());
+        return CompletableFuture.allOf(listed.stream()
+                .map(volume -> volume.backend().list(route.key(), object -> consumer.accept(
+                        new StoredObject(keyOn(volume, object.key()), object.size(),
+                                object.lastModified(), object.version()))))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Path>> localFile(String key) {
+        Route route = route(key);
+        return route.volume().backend().localFile(route.key());
+    }
+
+    @Override
+    public void close() {
+        defaultVolume.backend().close();
+        volumes.values().forEach(volume -> volume.backend().close());
+    }
+
+    private List<Volume> allVolumes() {
+        List<Volume> all = new ArrayList<>(volumes.size() + 1);
+        all.add(defaultVolume);
+        all.addAll(volumes.values());
+        return all;
+    }
+
+    /**
+     * Usable bytes left on the volume after storing {@code size} more and keeping the reserve,
+     * or zero when it should not take the object.
+     */
+    private long roomFor(Volume volume, long size) {
+        try {
+            FileStore store = Files.getFileStore(volume.root());
+            if (store.isReadOnly() || !Files.isWritable(volume.root())) {
+                return 0;
+            }
+            long reserve = Math.max(minFreeBytes, (long) (store.getTotalSpace() * minFreeRatio));
+            return Math.max(0, store.getUsableSpace() - reserve - size);
+        } catch (IOException e) {
+            log.warn("Skipping unavailable storage volume {}", volume.root(), e);
+            return 0;
+        }
+    }
+
+    private Route route(String key) {
+        String hidden = "";
+        String rest = key;
+        int slash = key.indexOf('/');
+        if (key.startsWith(".") && slash > 0) {
+            hidden = key.substring(0, slash + 1);
+            rest = key.substring(slash + 1);
+            slash = rest.indexOf('/');
+        }
+        Volume volume = volumes.get(slash > 0 ? rest.substring(0, slash) : rest);
+        if (volume == null) {
+            return new Route(defaultVolume, key);
+        }
+        return new Route(volume, hidden + (slash > 0 ? rest.substring(slash + 1) : ""));
+    }
+
+    private static String keyOn(Volume volume, String key) {
+        if (volume.id() == null) {
+            return key;
+        }
+        int slash = key.indexOf('/');
+        if (key.startsWith(".") && slash > 0) {
+            return key.substring(0, slash + 1) + volume.id() + "/" + key.substring(slash + 1);
+        }
+        return volume.id() + "/" + key;
+    }
+}
@@ -0,0 +1,137 @@
+package com.emasmetal.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Objects live in a bucket of an S3-compatible store (AWS S3, MinIO, ...). Reads are streamed
+ * from the HTTP response as they arrive; nothing is buffered in memory or on disk.
+ */
+@Slf4j
+public class S3StorageBackend implements StorageBackend {
+
+    private final S3AsyncClient client;
+    private final String bucket;
+
+    public S3StorageBackend(S3AsyncClient client, String bucket) {
+        this.client = client;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Creates the bucket if it does not exist yet, which is the case on a fresh MinIO.
+     */
+    public void ensureBucket() throws IOException {
+        try {
+            StorageBackend.join(client.headBucket(request -> request.bucket(bucket)));
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) {
+                throw e;
+            }
+            StorageBackend.join(client.createBucket(request -> request.bucket(bucket)));
+            log.info("Created bucket {}", bucket);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path source) {
+        String contentType = MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        return client.putObject(request -> request.bucket(bucket).key(key).contentType(contentType),
+                        AsyncRequestBody.fromFile(source))
+                .thenAccept(response -> {
+                    try {
+                        Files.deleteIfExists(source);
+                    } catch (IOException e) {
+                        log.warn("Could not delete uploaded file {}", source, e);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key, long offset, long length) {
+        if (length == 0) {
+            return CompletableFuture.completedFuture(InputStream.nullInputStream());
+        }
+
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(key);
+        if (offset > 0 || length > 0) {
+            request.range("bytes=" + offset + "-" + (length > 0 ? String.valueOf(offset + length - 1) : ""));
+        }
+        return client.getObject(request.build(), AsyncResponseTransformer.toBlockingInputStream())
+                .<InputStream>thenApply(response -> response)
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(isNotFound(e)
+                        ? new NoSuchFileException(key)
+                        : unwrap(e)));
+    }
+
+    @Override
+    public CompletableFuture<Optional<StoredObject>> stat(String key) {
+        return client.headObject(request -> request.bucket(bucket).key(key))
+                .thenApply(head -> Optional.of(new StoredObject(key, head.contentLength(), head.lastModified(), head.eTag())))
+                .exceptionallyCompose(e -> isNotFound(e)
+                        ? CompletableFuture.completedFuture(Optional.empty())
+                        : CompletableFuture.failedFuture(unwrap(e)));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        return client.deleteObject(request -> request.bucket(bucket).key(key)).thenAccept(response -> {});
+    }
+
+    @Override
+    public CompletableFuture<Void> move(String sourceKey, String targetKey) {
+        // S3 has no rename; the copy gets a fresh Last-Modified
+        return client.copyObject(request -> request
+                        .sourceBucket(bucket).sourceKey(sourceKey)
+                        .destinationBucket(bucket).destinationKey(targetKey))
+                .thenCompose(copied -> delete(sourceKey));
+    }
+
+    @Override
+    public CompletableFuture<Void> list(String prefix, Consumer<StoredObject> consumer) {
+        String directory = prefix.endsWith("/") ? prefix : prefix + "/";
+        return client.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(directory))
+                .contents()
+                .subscribe(object -> {
+                    if (!isHidden(object, directory)) {
+                        consumer.accept(new StoredObject(object.key(), object.size(), object.lastModified(), object.eTag()));
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private static boolean isHidden(S3Object object, String directory) {
+        String relative = object.key().substring(directory.length());
+        // Keys ending in a slash are folder markers left by consoles and some tools
+        return relative.startsWith(".") || relative.contains("/.") || relative.endsWith("/");
+    }
+
+    private static boolean isNotFound(Throwable e) {
+        return unwrap(e) instanceof S3Exception s3 && s3.statusCode() == 404;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
@@ -0,0 +1,96 @@
+package com.emasmetal.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Where uploaded files live. Keys are relative paths such as {@code gallery/<sha256>.jpg}.
+ * Every operation is asynchronous; a missing object makes {@link #get} fail with a
+ * {@link java.nio.file.NoSuchFileException}.
+ */
+public interface StorageBackend extends AutoCloseable {
+
+    /**
+     * The key a new object meant for {@code key} should be stored under. Backends that spread
+     * objects over several locations pick one here and record it in the returned key.
+     *
+     * @param size bytes about to be stored
+     */
+    default String place(String key, long size) throws IOException {
+        return key;
+    }
+
+    /**
+     * Every key that {@link #place} may have returned for {@code key}, for callers looking for an
+     * existing copy.
+     */
+    default List<String> placements(String key) {
+        return List.of(key);
+    }
+
+    /**
+     * Stores a local file under {@code key}, replacing any existing object. The file is consumed:
+     * moved into place or uploaded and then deleted. On failure it is left where it was.
+     */
+    CompletableFuture<Void> put(String key, Path source);
+
+    /**
+     * Streams {@code length} bytes starting at {@code offset}, or everything from {@code offset}
+     * on when {@code length} is negative.
+     */
+    CompletableFuture<InputStream> get(String key, long offset, long length);
+
+    default CompletableFuture<InputStream> get(String key) {
+        return get(key, 0, -1);
+    }
+
+    CompletableFuture<Optional<StoredObject>> stat(String key);
+
+    CompletableFuture<Void> delete(String key);
+
+    /**
+     * Renames an object. The moved object counts as newly written.
+     */
+    CompletableFuture<Void> move(String sourceKey, String targetKey);
+
+    /**
+     * Calls {@code consumer} for every object below {@code prefix}, possibly from several threads
+     * at once. Hidden entries (names starting with a dot) below the prefix are skipped.
+     */
+    CompletableFuture<Void> list(String prefix, Consumer<StoredObject> consumer);
+
+    /**
+     * A file on this machine holding the object, for callers that can hand a path to the OS
+     * (sendfile, image decoders). Empty when the object is only reachable through {@link #get}.
+     */
+    default CompletableFuture<Optional<Path>> localFile(String key) {
+        return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Waits for an operation, rethrowing an I/O failure as the {@link IOException} it was.
+     */
+    static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+}
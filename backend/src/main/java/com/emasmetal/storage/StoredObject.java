@@ -0,0 +1,8 @@
+package com.emasmetal.storage;
+
+import java.time.Instant;
+
+/**
+ * @param version changes whenever the bytes under the key do (inode on disk, ETag in S3)
+ */
+public record StoredObject(String key, long size, Instant lastModified, String version) {}
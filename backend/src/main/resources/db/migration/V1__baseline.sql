@@ -0,0 +1,47 @@
+-- Schema as Hibernate's ddl-auto created it before migrations took over. Databases that already
+-- have these tables are baselined at this version and skip it; everything added since then lives
+-- in the later migrations, so it is created for them as well.
+
+CREATE TABLE users (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username   VARCHAR(255) NOT NULL UNIQUE,
+    password   VARCHAR(255) NOT NULL,
+    email      VARCHAR(255) NOT NULL,
+    role       VARCHAR(255) NOT NULL CHECK (role IN ('ADMIN', 'USER')),
+    enabled    BOOLEAN      NOT NULL
+);
+
+CREATE TABLE company_references (
+    id            UUID PRIMARY KEY,
+    name          VARCHAR(255) NOT NULL,
+    website_url   VARCHAR(255),
+    logo_url      VARCHAR(255),
+    industry      VARCHAR(255),
+    description   VARCHAR(500),
+    display_order INTEGER,
+    created_at    TIMESTAMP(6)
+);
+
+CREATE TABLE gallery_items (
+    id            UUID PRIMARY KEY,
+    title         VARCHAR(255) NOT NULL,
+    image_url     VARCHAR(255) NOT NULL,
+    thumbnail_url VARCHAR(255),
+    category      VARCHAR(255),
+    description   VARCHAR(500),
+    display_order INTEGER,
+    created_at    TIMESTAMP(6)
+);
+
+CREATE TABLE contact_messages (
+    id                  UUID PRIMARY KEY,
+    name                VARCHAR(255)  NOT NULL,
+    company             VARCHAR(255),
+    email               VARCHAR(255)  NOT NULL,
+    phone               VARCHAR(255),
+    message             VARCHAR(2000) NOT NULL,
+    attachment_url      VARCHAR(255),
+    attachment_filename VARCHAR(255),
+    is_read             BOOLEAN,
+    created_at          TIMESTAMP(6)
+);
@@ -0,0 +1,64 @@
+-- Tables, columns and indexes for image variants and placeholders, content-addressed uploads,
+-- the deletion outbox, resumable uploads and delta sync. Written to be re-runnable, because a
+-- database that ran a build between those features and the migrations got some of them from
+-- ddl-auto already.
+
+ALTER TABLE company_references ADD COLUMN IF NOT EXISTS logo_width          INTEGER;
+ALTER TABLE company_references ADD COLUMN IF NOT EXISTS logo_height         INTEGER;
+ALTER TABLE company_references ADD COLUMN IF NOT EXISTS logo_dominant_color VARCHAR(7);
+ALTER TABLE company_references ADD COLUMN IF NOT EXISTS logo_blur_hash      VARCHAR(64);
+
+ALTER TABLE gallery_items ADD COLUMN IF NOT EXISTS image_variants JSONB;
+ALTER TABLE gallery_items ADD COLUMN IF NOT EXISTS image_width    INTEGER;
+ALTER TABLE gallery_items ADD COLUMN IF NOT EXISTS image_height   INTEGER;
+ALTER TABLE gallery_items ADD COLUMN IF NOT EXISTS dominant_color VARCHAR(7);
+ALTER TABLE gallery_items ADD COLUMN IF NOT EXISTS blur_hash      VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS idx_gallery_items_listing ON gallery_items (display_order, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_contact_messages_created ON contact_messages (created_at, id);
+
+CREATE TABLE IF NOT EXISTS stored_files (
+    storage_key      VARCHAR(512) PRIMARY KEY,
+    digest           VARCHAR(64)  NOT NULL,
+    size_bytes       BIGINT       NOT NULL,
+    ref_count        INTEGER      NOT NULL,
+    created_at       TIMESTAMP(6),
+    last_acquired_at TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS file_deletions (
+    id              UUID PRIMARY KEY,
+    file_url        VARCHAR(512) NOT NULL,
+    derived_urls    JSONB,
+    attempts        INTEGER      NOT NULL,
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    last_error      VARCHAR(1000),
+    created_at      TIMESTAMP(6)
+);
+
+CREATE INDEX IF NOT EXISTS idx_file_deletions_next_attempt ON file_deletions (next_attempt_at);
+
+CREATE TABLE IF NOT EXISTS resumable_uploads (
+    id                UUID PRIMARY KEY,
+    original_filename VARCHAR(255) NOT NULL,
+    sub_directory     VARCHAR(50)  NOT NULL,
+    upload_length     BIGINT       NOT NULL,
+    upload_offset     BIGINT       NOT NULL,
+    stored_url        VARCHAR(512),
+    created_at        TIMESTAMP(6),
+    updated_at        TIMESTAMP(6)
+);
+
+CREATE SEQUENCE IF NOT EXISTS change_log_seq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE IF NOT EXISTS change_log (
+    version     BIGINT PRIMARY KEY,
+    entity_type VARCHAR(20) NOT NULL CHECK (entity_type IN ('GALLERY', 'REFERENCE')),
+    entity_id   UUID        NOT NULL,
+    operation   VARCHAR(10) NOT NULL CHECK (operation IN ('UPSERT', 'DELETE')),
+    changed_at  TIMESTAMP(6),
+    CONSTRAINT uk_change_log_entity UNIQUE (entity_type, entity_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_change_log_type_version ON change_log (entity_type, version);
@@ -0,0 +1,18 @@
+-- Indexes matching the filter and sort order of the repository queries, so listings are read in
+-- index order instead of being scanned and sorted.
+
+-- ReferenceRepository.findAllListItems / findListItemsByIndustry
+CREATE INDEX IF NOT EXISTS idx_company_references_listing ON company_references (display_order, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_company_references_industry ON company_references (industry, display_order);
+
+-- GalleryItemRepository listings and keyset pages of one category
+CREATE INDEX IF NOT EXISTS idx_gallery_items_category
+    ON gallery_items (category, display_order, created_at DESC, id DESC);
+
+-- Unread inbox pages and countByIsReadFalse: only unread rows are indexed, so the index stays
+-- small however large the read history grows
+DROP INDEX IF EXISTS idx_contact_messages_unread;
+CREATE INDEX idx_contact_messages_unread ON contact_messages (created_at, id) WHERE is_read = false;
+
+-- ResumableUploadRepository.findByUpdatedAtBefore (abandoned upload cleanup)
+CREATE INDEX IF NOT EXISTS idx_resumable_uploads_updated ON resumable_uploads (updated_at);